@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+import org.jboss.modules.ConcreteModuleSpec;
+import org.jboss.modules.DependencySpec;
+import org.jboss.modules.ModuleDependencySpec;
+import org.jboss.modules.ModuleIdentifier;
+import org.jboss.modules.ModuleLoadException;
+import org.jboss.modules.ModuleSpec;
+
+/**
+ * Walks a modules root and resolves the dependencies of every {@code module.xml} found. If the parallelism
+ * is greater than one the directory walk and the resolution of each module are split across a {@link ForkJoinPool},
+ * otherwise the tree is scanned on the calling thread.
+ */
+abstract class AbstractModuleSpecFinder implements ModuleSpecFinder {
+
+	static final String MODULE_XML = "module.xml";
+
+	final File root;
+	private final int parallelism;
+	private volatile Map<ModuleIdentifier, Set<ModuleDependency>> modules;
+	private volatile Map<ModuleIdentifier, Long> resourceSizes;
+
+	AbstractModuleSpecFinder(File root, int parallelism) {
+		if (!root.exists()){
+			throw new IllegalArgumentException(root.getAbsolutePath() + " does not exist");
+		}
+		if (!root.isDirectory()){
+			throw new IllegalArgumentException(root.getAbsolutePath() + " is not a directory");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.root = root;
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public Map<ModuleIdentifier, Set<ModuleDependency>> findAllModules() throws ModuleLoadException {
+		if (this.modules != null){
+			return this.modules;
+		}
+
+		Map<ModuleIdentifier, Set<ModuleDependency>> modules = new HashMap<ModuleIdentifier, Set<ModuleDependency>>();
+		if (parallelism == 1) {
+			addModules(root, modules);
+		} else {
+			Map<ModuleIdentifier, Set<ModuleDependency>> concurrentModules = new ConcurrentHashMap<>();
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new ScanTask(root, concurrentModules));
+			} catch (ScanException e) {
+				throw e.getCause();
+			} finally {
+				pool.shutdown();
+			}
+			modules.putAll(concurrentModules);
+		}
+		this.modules = modules;
+		return modules;
+	}
+
+	@Override
+	public Map<ModuleIdentifier, Long> findResourceSizes() throws ModuleLoadException {
+		if (this.resourceSizes != null){
+			return this.resourceSizes;
+		}
+		Map<ModuleIdentifier, Long> resourceSizes = findResourceSizes(findAllModules().keySet());
+		this.resourceSizes = resourceSizes;
+		return resourceSizes;
+	}
+
+	/**
+	 * Sizes the resource roots of some modules, splitting the modules across a {@link ForkJoinPool} if the parallelism
+	 * is greater than one.
+	 */
+	Map<ModuleIdentifier, Long> findResourceSizes(Collection<ModuleIdentifier> identifiers) throws ModuleLoadException {
+		Map<ModuleIdentifier, Long> sizes = new HashMap<>(identifiers.size() * 2);
+		if (parallelism == 1) {
+			for (ModuleIdentifier identifier : identifiers) {
+				sizes.put(identifier, getResourceSize(identifier));
+			}
+			return sizes;
+		}
+
+		List<Callable<Long>> tasks = new ArrayList<>(identifiers.size());
+		for (final ModuleIdentifier identifier : identifiers) {
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() throws ModuleLoadException {
+					return getResourceSize(identifier);
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Future<Long>> results = pool.invokeAll(tasks);
+			int i = 0;
+			for (ModuleIdentifier identifier : identifiers) {
+				sizes.put(identifier, results.get(i++).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModuleLoadException("Interrupted sizing the resource roots", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ModuleLoadException) {
+				throw (ModuleLoadException)e.getCause();
+			}
+			throw new ModuleLoadException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return sizes;
+	}
+
+	private long getResourceSize(ModuleIdentifier identifier) throws ModuleLoadException {
+		File dir = getModuleDirectory(root, identifier);
+		Path dirPath = dir.toPath();
+		long size = 0;
+		for (String resourceRoot : ModuleXmlParser.parseResourceRoots(identifier, new File(dir, MODULE_XML))) {
+			try {
+				size += Util.sizeOf(dirPath.resolve(resourceRoot));
+			} catch (IOException e) {
+				throw new ModuleLoadException("Could not size " + resourceRoot + " in " + identifier, e);
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public Set<ModuleDependency> getModuleDependencies(ModuleSpec moduleSpec) throws ModuleLoadException {
+		Set<ModuleDependency> deps = new HashSet<>();
+		if (moduleSpec instanceof ConcreteModuleSpec){
+			for (DependencySpec dep : ((ConcreteModuleSpec)moduleSpec).getDependencies()){
+				if (dep instanceof ModuleDependencySpec){
+					ModuleDependencySpec depSpec = (ModuleDependencySpec)dep;
+					deps.add(new ModuleDependency(((ConcreteModuleSpec)moduleSpec).getModuleIdentifier(), depSpec.getIdentifier(), depSpec.isOptional()));
+				}
+			}
+		}
+		return deps;
+	}
+
+	/**
+	 * Resolves the dependencies of a single module. Implementations which can get at the dependencies more cheaply
+	 * than by building the full {@link ModuleSpec} should override this.
+	 *
+	 * @param identifier the identifier of the module, as derived from the location of its {@code module.xml}
+	 * @param moduleXml the {@code module.xml} file
+	 * @return the dependencies
+	 */
+	Set<ModuleDependency> loadDependencies(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+		return getModuleDependencies(findModule(identifier));
+	}
+
+	private void addModules(File dir, Map<ModuleIdentifier, Set<ModuleDependency>> modules) throws ModuleLoadException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files){
+			if (file.isDirectory()){
+				addModules(file, modules);
+			} else if (file.getName().equals(MODULE_XML)){
+				ModuleIdentifier identifier = createModuleIdentifier(file);
+				modules.put(identifier, loadDependencies(identifier, file));
+			}
+		}
+	}
+
+	ModuleIdentifier createModuleIdentifier(File moduleXml){
+		File current = moduleXml.getParentFile();
+		String slot = current.getName();
+		current = current.getParentFile();
+		Stack<String> nameStack = new Stack<String>();
+		while (!current.equals(root)){
+			nameStack.push(current.getName());
+			current = current.getParentFile();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		while (nameStack.size() > 0){
+
+			if (first){
+				first = false;
+			} else {
+				sb.append(".");
+			}
+			sb.append(nameStack.pop());
+		}
+		return ModuleIdentifier.create(sb.toString(), slot);
+	}
+
+	/**
+	 * Gets the directory holding the {@code module.xml} of a module, which is the reverse of
+	 * {@link #createModuleIdentifier(File)}.
+	 */
+	static File getModuleDirectory(File root, ModuleIdentifier identifier) {
+		return new File(new File(root, identifier.getName().replace('.', File.separatorChar)), identifier.getSlot());
+	}
+
+	/**
+	 * Scans one directory, resolving its {@code module.xml} if it has one and forking a new task for each
+	 * sub directory.
+	 */
+	private class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final File dir;
+		private final Map<ModuleIdentifier, Set<ModuleDependency>> modules;
+
+		ScanTask(File dir, Map<ModuleIdentifier, Set<ModuleDependency>> modules) {
+			this.dir = dir;
+			this.modules = modules;
+		}
+
+		@Override
+		protected void compute() {
+			File[] files = dir.listFiles();
+			if (files == null) {
+				return;
+			}
+			List<ScanTask> subTasks = new ArrayList<>();
+			for (File file : files){
+				if (file.isDirectory()){
+					subTasks.add(new ScanTask(file, modules));
+				} else if (file.getName().equals(MODULE_XML)){
+					ModuleIdentifier identifier = createModuleIdentifier(file);
+					try {
+						modules.put(identifier, loadDependencies(identifier, file));
+					} catch (ModuleLoadException e) {
+						throw new ScanException(e);
+					}
+				}
+			}
+			invokeAll(subTasks);
+		}
+	}
+
+	/**
+	 * Carries a {@link ModuleLoadException} out of the fork join pool.
+	 */
+	private static class ScanException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanException(ModuleLoadException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized ModuleLoadException getCause() {
+			return (ModuleLoadException)super.getCause();
+		}
+	}
+}
@@ -23,43 +23,218 @@
 package org.wildfly.util.module.dependency;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.jboss.modules.ModuleIdentifier;
 
-public class AllDependencyPathsDFS {
-	private final ModuleIdentifier search;
-	private final Stack<ModuleIdentifier> stack = new Stack<>();
-	private final List<List<ModuleIdentifier>> paths = new ArrayList<>();
+/**
+ * Finds all the simple dependency paths from one module to another. Before searching, the modules which can reach the
+ * target at all are found by walking the reversed graph from it, and any branch leading elsewhere is pruned
+ * straight away. The number of paths and the number of modules in a path can be capped, in which case
+ * {@link PathIterator#isTruncated()} tells whether the caps cut off any paths.
+ * <p>
+ * The paths are found lazily. {@link #iterator()} and {@link #stream()} produce one path at a time from a resumable
+ * search, so callers can stop early or filter without holding on to every path, while {@link #pathsTo()} collects them
+ * all.
+ */
+public class AllDependencyPathsDFS implements Iterable<List<ModuleIdentifier>> {
+	private final FrozenModuleGraph graph;
+	private final ModuleIdentifier root;
+	private final boolean rootIsSearch;
+	private final int rootNode;
+	private final int searchNode;
+	private final BitSet canReach;
+	private final int maxPaths;
+	private final int maxLength;
+	private List<List<ModuleIdentifier>> paths;
+	private boolean truncated;
 
 	AllDependencyPathsDFS(ModuleGraph graph, ModuleIdentifier root, ModuleIdentifier search) {
-		this.search = search;
-		dfs(graph, root, false);
+		this(graph.freeze(), root, search, Integer.MAX_VALUE, Integer.MAX_VALUE);
 	}
 
-	private void dfs(ModuleGraph graph, ModuleIdentifier id, boolean optional){
-		stack.push(id);
-		try {
-			if (search.equals(id)){
-				paths.add(new ArrayList<>(stack));
-
-			} else {
-				Set<ModuleDependency> deps = graph.getDependencies(id);
-				for (ModuleDependency dep : deps){
-					ModuleIdentifier depId = dep.getToId();
-					if (!stack.contains(depId)){
-						dfs(graph, depId, dep.isOptional());
-					}
-				}
-			}
-		} finally {
-			stack.pop();
+	AllDependencyPathsDFS(ModuleGraph graph, ModuleIdentifier root, ModuleIdentifier search, int maxPaths, int maxLength) {
+		this(graph.freeze(), root, search, maxPaths, maxLength);
+	}
+
+	AllDependencyPathsDFS(FrozenModuleGraph graph, ModuleIdentifier root, ModuleIdentifier search) {
+		this(graph, root, search, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxPaths the maximum number of paths to find
+	 * @param maxLength the maximum number of modules in a path, including the root and the searched for module
+	 */
+	AllDependencyPathsDFS(FrozenModuleGraph graph, ModuleIdentifier root, ModuleIdentifier search, int maxPaths, int maxLength) {
+		if (maxPaths < 1 || maxLength < 1) {
+			throw new IllegalArgumentException("maxPaths and maxLength must be at least 1");
+		}
+		this.graph = graph;
+		this.root = root;
+		this.maxPaths = maxPaths;
+		this.maxLength = maxLength;
+		this.rootIsSearch = root.equals(search);
+		this.rootNode = graph.indexOf(root);
+		this.searchNode = graph.indexOf(search);
+		if (rootIsSearch || rootNode < 0 || searchNode < 0) {
+			this.canReach = null;
+		} else {
+			BitSet canReach = graph.reverse().reachableFrom(searchNode);
+			this.canReach = canReach.get(rootNode) ? canReach : null;
 		}
 	}
 
+	/**
+	 * Gets a new lazy iterator over the paths. Each call starts a new search.
+	 */
+	@Override
+	public PathIterator iterator() {
+		return new PathIterator();
+	}
+
+	/**
+	 * Gets a sequential stream of the paths, backed by a new lazy search.
+	 */
+	Stream<List<ModuleIdentifier>> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Gets all the paths, which are found on the first call.
+	 */
 	List<List<ModuleIdentifier>> pathsTo(){
+		if (paths == null) {
+			List<List<ModuleIdentifier>> paths = new ArrayList<>();
+			PathIterator it = new PathIterator();
+			while (it.hasNext()) {
+				paths.add(it.next());
+			}
+			truncated = it.isTruncated();
+			this.paths = paths;
+		}
 		return paths;
 	}
+
+	/**
+	 * Whether the path count or length caps may have stopped some paths from being found. This finds all the paths,
+	 * like {@link #pathsTo()}, so lazy callers should ask their {@link PathIterator} instead.
+	 */
+	boolean isTruncated() {
+		pathsTo();
+		return truncated;
+	}
+
+	/**
+	 * The state of a depth first search which is suspended each time a path is found. Each frame on the stack holds a
+	 * node and the next of its edges to follow.
+	 */
+	public class PathIterator implements Iterator<List<ModuleIdentifier>> {
+		private final int[] stack;
+		private final int[] nextEdge;
+		private final BitSet onStack;
+		private int top = -1;
+		private int count;
+		private boolean lengthCapped;
+		private List<ModuleIdentifier> next;
+		private Boolean truncated;
+
+		PathIterator() {
+			if (canReach == null) {
+				stack = nextEdge = null;
+				onStack = null;
+				if (rootIsSearch) {
+					next = Collections.singletonList(root);
+				}
+				return;
+			}
+			stack = new int[Math.min(graph.size(), maxLength)];
+			nextEdge = new int[stack.length];
+			onStack = new BitSet(graph.size());
+			top = 0;
+			stack[top] = rootNode;
+			nextEdge[top] = graph.firstEdge(rootNode);
+			onStack.set(rootNode);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && count < maxPaths) {
+				next = findNext();
+			}
+			return next != null;
+		}
+
+		@Override
+		public List<ModuleIdentifier> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			List<ModuleIdentifier> path = next;
+			next = null;
+			count++;
+			return path;
+		}
+
+		/**
+		 * Whether the caps have cut off any of the paths searched so far. Once {@link #hasNext()} returns
+		 * {@code false} this covers the whole search; if the path count cap was reached, this searches for one more
+		 * path to tell, once, and remembers the answer.
+		 */
+		public boolean isTruncated() {
+			if (lengthCapped) {
+				return true;
+			}
+			if (count < maxPaths) {
+				return false;
+			}
+			if (truncated == null) {
+				//Look for one more path than allowed
+				List<ModuleIdentifier> extra = findNext();
+				truncated = extra != null || lengthCapped;
+			}
+			return truncated;
+		}
+
+		private List<ModuleIdentifier> findNext() {
+			while (top >= 0) {
+				int node = stack[top];
+				int edge = nextEdge[top];
+				if (edge == graph.endEdge(node)) {
+					onStack.clear(node);
+					top--;
+					continue;
+				}
+				nextEdge[top] = edge + 1;
+				int depNode = graph.getTarget(edge);
+				if (!canReach.get(depNode) || onStack.get(depNode)){
+					continue;
+				}
+				if (top + 2 > maxLength) {
+					lengthCapped = true;
+					continue;
+				}
+				if (depNode == searchNode) {
+					List<ModuleIdentifier> path = new ArrayList<>(top + 2);
+					for (int i = 0 ; i <= top ; i++) {
+						path.add(graph.getModule(stack[i]));
+					}
+					path.add(graph.getModule(searchNode));
+					return path;
+				}
+				top++;
+				stack[top] = depNode;
+				nextEdge[top] = graph.firstEdge(depNode);
+				onStack.set(depNode);
+			}
+			return null;
+		}
+	}
 }
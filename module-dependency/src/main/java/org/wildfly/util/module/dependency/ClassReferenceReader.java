@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Reads the packages a class file refers to from its constant pool, without loading the class. The classes named by
+ * class entries count, as do the classes in the descriptors of the fields and methods it uses. Types which only
+ * appear in its own signatures, in annotations or as strings passed to reflection are missed.
+ */
+final class ClassReferenceReader {
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private ClassReferenceReader() {
+	}
+
+	/**
+	 * Adds the packages referred to by a class file to {@code packages}.
+	 *
+	 * @param in the class file, which is read up to the end of the constant pool
+	 * @param packages where to add the package names, dot separated
+	 */
+	static void addReferencedPackages(InputStream in, Set<String> packages) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		data.readUnsignedShort();
+		data.readUnsignedShort();
+		int count = data.readUnsignedShort();
+		String[] utf8 = new String[count];
+		//Indexes of the utf8 entries holding class names, and holding descriptors
+		int[] classNames = new int[count];
+		int classNameCount = 0;
+		int[] descriptors = new int[count];
+		int descriptorCount = 0;
+		for (int i = 1 ; i < count ; i++) {
+			int tag = data.readUnsignedByte();
+			switch (tag) {
+				case 1:
+					utf8[i] = data.readUTF();
+					break;
+				case 7:
+					classNames[classNameCount++] = data.readUnsignedShort();
+					break;
+				case 12:
+					data.readUnsignedShort();
+					descriptors[descriptorCount++] = data.readUnsignedShort();
+					break;
+				case 16:
+					descriptors[descriptorCount++] = data.readUnsignedShort();
+					break;
+				case 8:
+				case 19:
+				case 20:
+					data.readUnsignedShort();
+					break;
+				case 15:
+					data.readUnsignedByte();
+					data.readUnsignedShort();
+					break;
+				case 3:
+				case 4:
+				case 9:
+				case 10:
+				case 11:
+				case 17:
+				case 18:
+					data.readInt();
+					break;
+				case 5:
+				case 6:
+					//Longs and doubles take up two entries
+					data.readLong();
+					i++;
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag + " at " + i);
+			}
+		}
+
+		for (int i = 0 ; i < classNameCount ; i++) {
+			String name = utf8[classNames[i]];
+			if (name.startsWith("[")) {
+				addDescriptorPackages(name, packages);
+			} else {
+				addPackage(name, 0, name.length(), packages);
+			}
+		}
+		for (int i = 0 ; i < descriptorCount ; i++) {
+			addDescriptorPackages(utf8[descriptors[i]], packages);
+		}
+	}
+
+	/**
+	 * Gets the package of a class file or class in a jar.
+	 *
+	 * @param path the path of the class, e.g. {@code org/jboss/Foo.class}
+	 * @return the dot separated package, or {@code null} for the default package
+	 */
+	static String getPackage(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash <= 0 ? null : path.substring(0, slash).replace('/', '.');
+	}
+
+	private static void addDescriptorPackages(String descriptor, Set<String> packages) {
+		for (int i = 0 ; i < descriptor.length() ; i++) {
+			if (descriptor.charAt(i) == 'L') {
+				int end = descriptor.indexOf(';', i);
+				if (end < 0) {
+					return;
+				}
+				addPackage(descriptor, i + 1, end, packages);
+				i = end;
+			}
+		}
+	}
+
+	private static void addPackage(String name, int start, int end, Set<String> packages) {
+		int slash = name.lastIndexOf('/', end - 1);
+		if (slash > start) {
+			packages.add(name.substring(start, slash).replace('/', '.'));
+		}
+	}
+}
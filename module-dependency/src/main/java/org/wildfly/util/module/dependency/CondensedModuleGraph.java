@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * The DAG of the strongly connected components of a {@link FrozenModuleGraph}, with one node per component. Each
+ * dependency cycle in the module graph ends up as a single component.
+ * <p>
+ * Components are numbered in reverse topological order, so a component only has edges to components with a lower
+ * number. Iterating from {@code 0} upwards visits dependencies before the modules depending on them, iterating down
+ * from {@code getComponentCount() - 1} visits modules before their dependencies. The edges between two components
+ * are merged into one, and {@link #getMultiplicity(int)} gives the number of module dependencies it stands for.
+ */
+public class CondensedModuleGraph {
+
+	private final FrozenModuleGraph graph;
+	private final StronglyConnectedComponents components;
+	private final int[] offsets;
+	private final int[] targets;
+	private final int[] multiplicities;
+	private final boolean[] selfLoops;
+
+	CondensedModuleGraph(FrozenModuleGraph graph) {
+		this.graph = graph;
+		this.components = new StronglyConnectedComponents(graph);
+		int count = components.getComponentCount();
+		this.offsets = new int[count + 1];
+		this.selfLoops = new boolean[count];
+
+		int[] targets = new int[graph.getEdgeCount()];
+		int[] multiplicities = new int[graph.getEdgeCount()];
+		//Position of each target component in the edges of the component being built, so edges can be merged
+		int[] position = new int[count];
+		Arrays.fill(position, -1);
+		int edgeCount = 0;
+		for (int c = 0 ; c < count ; c++) {
+			offsets[c] = edgeCount;
+			for (int i = 0 ; i < components.getComponentSize(c) ; i++) {
+				int node = components.getMember(c, i);
+				for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+					int target = components.getComponent(graph.getTarget(edge));
+					if (target == c) {
+						if (components.getComponentSize(c) == 1) {
+							selfLoops[c] = true;
+						}
+					} else if (position[target] < offsets[c]) {
+						position[target] = edgeCount;
+						targets[edgeCount] = target;
+						multiplicities[edgeCount] = 1;
+						edgeCount++;
+					} else {
+						multiplicities[position[target]]++;
+					}
+				}
+			}
+		}
+		offsets[count] = edgeCount;
+		this.targets = Arrays.copyOf(targets, edgeCount);
+		this.multiplicities = Arrays.copyOf(multiplicities, edgeCount);
+	}
+
+	public FrozenModuleGraph getModuleGraph() {
+		return graph;
+	}
+
+	public int getComponentCount() {
+		return selfLoops.length;
+	}
+
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	/**
+	 * Gets the component containing a module.
+	 *
+	 * @return the component, or {@code -1} if the module is not in the graph
+	 */
+	public int getComponent(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		return node < 0 ? -1 : components.getComponent(node);
+	}
+
+	int getComponent(int node) {
+		return components.getComponent(node);
+	}
+
+	public int getComponentSize(int component) {
+		return components.getComponentSize(component);
+	}
+
+	/**
+	 * Gets the node of the i'th module in a component, for {@code i} from zero up to the size of the component.
+	 */
+	public int getMember(int component, int i) {
+		return components.getMember(component, i);
+	}
+
+	public Set<ModuleIdentifier> getModules(int component) {
+		Set<ModuleIdentifier> modules = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int i = 0 ; i < getComponentSize(component) ; i++) {
+			modules.add(graph.getModule(getMember(component, i)));
+		}
+		return modules;
+	}
+
+	public int firstEdge(int component) {
+		return offsets[component];
+	}
+
+	public int endEdge(int component) {
+		return offsets[component + 1];
+	}
+
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	public int getMultiplicity(int edge) {
+		return multiplicities[edge];
+	}
+
+	/**
+	 * Whether a component is a dependency cycle, i.e. it has more than one module or its module depends on itself.
+	 */
+	public boolean isCycle(int component) {
+		return getComponentSize(component) > 1 || selfLoops[component];
+	}
+
+	/**
+	 * Gets the modules making up each dependency cycle, largest cycle first.
+	 */
+	public List<Set<ModuleIdentifier>> getCycles() {
+		List<Set<ModuleIdentifier>> cycles = new ArrayList<>();
+		for (int c = 0 ; c < getComponentCount() ; c++) {
+			if (isCycle(c)) {
+				cycles.add(Collections.unmodifiableSet(getModules(c)));
+			}
+		}
+		Collections.sort(cycles, new Comparator<Set<ModuleIdentifier>>() {
+			@Override
+			public int compare(Set<ModuleIdentifier> o1, Set<ModuleIdentifier> o2) {
+				if (o1.size() != o2.size()) {
+					return o2.size() - o1.size();
+				}
+				return Util.MODULE_ID_SLOT_COMPARATOR.compare(o1.iterator().next(), o2.iterator().next());
+			}
+		});
+		return cycles;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Labels every module by how it can be reached from a root module, in a single pass: through non-optional
+ * dependencies only, only by going through at least one optional dependency, or not at all.
+ * <p>
+ * Two worklists are used, and the one holding modules reached through non-optional dependencies is always drained
+ * first. So by the time an optional dependency is followed any further, every module with a non-optional path is
+ * already labelled as such, no label ever needs to be upgraded, and each module is expanded once.
+ */
+public class DependencyClosure {
+
+	public enum Reachability {
+		/** The module can not be reached from the root */
+		UNREACHABLE,
+		/** Every path from the root to the module goes through an optional dependency */
+		OPTIONAL,
+		/** The module can be reached from the root through non-optional dependencies only */
+		MANDATORY
+	}
+
+	private final ModuleIdentifier root;
+	private final FrozenModuleGraph graph;
+	//Two bits per node: whether it has been reached at all, and whether it has been reached without optional dependencies
+	private final BitSet reached;
+	private final BitSet mandatory;
+	private final int[] edgeTo;
+
+	DependencyClosure(ModuleGraph graph, ModuleIdentifier root) {
+		this(graph.freeze(), root);
+	}
+
+	DependencyClosure(FrozenModuleGraph graph, ModuleIdentifier root) {
+		this.root = root;
+		this.graph = graph;
+		this.reached = new BitSet(graph.size());
+		this.mandatory = new BitSet(graph.size());
+		this.edgeTo = new int[graph.size()];
+		Arrays.fill(edgeTo, -1);
+		int rootNode = graph.indexOf(root);
+		if (rootNode >= 0) {
+			search(rootNode);
+		}
+	}
+
+	private void search(int rootNode) {
+		int[] mandatoryQueue = new int[graph.size()];
+		int mandatoryHead = 0;
+		int mandatoryTail = 0;
+		int[] optionalQueue = new int[graph.size()];
+		int optionalHead = 0;
+		int optionalTail = 0;
+		reached.set(rootNode);
+		mandatory.set(rootNode);
+		mandatoryQueue[mandatoryTail++] = rootNode;
+		while (mandatoryHead < mandatoryTail || optionalHead < optionalTail) {
+			if (mandatoryHead < mandatoryTail) {
+				int node = mandatoryQueue[mandatoryHead++];
+				for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+					int target = graph.getTarget(edge);
+					if (!graph.isOptional(edge)) {
+						if (!mandatory.get(target)) {
+							reached.set(target);
+							mandatory.set(target);
+							edgeTo[target] = node;
+							mandatoryQueue[mandatoryTail++] = target;
+						}
+					} else if (!reached.get(target)) {
+						reached.set(target);
+						edgeTo[target] = node;
+						optionalQueue[optionalTail++] = target;
+					}
+				}
+			} else {
+				int node = optionalQueue[optionalHead++];
+				if (mandatory.get(node)) {
+					//It was found to be mandatory after being queued here, and has been expanded as such
+					continue;
+				}
+				for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+					int target = graph.getTarget(edge);
+					if (!reached.get(target)) {
+						reached.set(target);
+						edgeTo[target] = node;
+						optionalQueue[optionalTail++] = target;
+					}
+				}
+			}
+		}
+	}
+
+	public Reachability getReachability(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return root.equals(id) ? Reachability.MANDATORY : Reachability.UNREACHABLE;
+		}
+		if (mandatory.get(node)) {
+			return Reachability.MANDATORY;
+		}
+		return reached.get(node) ? Reachability.OPTIONAL : Reachability.UNREACHABLE;
+	}
+
+	/**
+	 * Gets the modules which can be reached through non-optional dependencies only, including the root.
+	 */
+	public Set<ModuleIdentifier> getMandatoryModules() {
+		if (graph.indexOf(root) < 0) {
+			return Collections.singleton(root);
+		}
+		return graph.getModules(mandatory);
+	}
+
+	/**
+	 * Gets the modules which can only be reached by going through an optional dependency.
+	 */
+	public Set<ModuleIdentifier> getOptionalModules() {
+		BitSet optional = (BitSet)reached.clone();
+		optional.andNot(mandatory);
+		return graph.getModules(optional);
+	}
+
+	/**
+	 * Gets a path from the root to a module. For a {@link Reachability#MANDATORY} module this is a shortest path of
+	 * non-optional dependencies. For an {@link Reachability#OPTIONAL} one it follows non-optional dependencies as far
+	 * as it can before going through optional ones.
+	 *
+	 * @return the path, or an empty list if the module can not be reached
+	 */
+	public List<ModuleIdentifier> pathTo(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return root.equals(id) ? Collections.singletonList(id) : Collections.<ModuleIdentifier>emptyList();
+		}
+		if (!reached.get(node)) {
+			return Collections.emptyList();
+		}
+		return graph.pathTo(edgeTo, node);
+	}
+}
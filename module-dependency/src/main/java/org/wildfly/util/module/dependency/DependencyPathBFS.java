@@ -22,76 +22,308 @@
 
 package org.wildfly.util.module.dependency;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.Stack;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.jboss.modules.ModuleIdentifier;
 
 public class DependencyPathBFS {
 
+	/**
+	 * Graphs with at least this many modules are searched in parallel on the common pool by default.
+	 */
+	static final int PARALLEL_THRESHOLD = Integer.getInteger("jboss.as.modules.bfs.parallel.threshold", 100000);
+	/**
+	 * The smallest number of frontier nodes handed to each task of the parallel search.
+	 */
+	static final int MIN_CHUNK_SIZE = 256;
+
 	private final ModuleIdentifier root;
-	private final Set<ModuleIdentifier> marked = new HashSet<>();
-	private final Map<ModuleIdentifier, ModuleIdentifier> edgeTo = new HashMap<>();
-	private final Set<ModuleDependency> edges = new HashSet<>();
+	private final FrozenModuleGraph graph;
+	private final BitSet marked;
+	private final int[] edgeTo;
+	private Set<ModuleIdentifier> allModules;
 
 	DependencyPathBFS(ModuleGraph graph, ModuleIdentifier root) {
+		this(graph.freeze(), root);
+	}
+
+	DependencyPathBFS(FrozenModuleGraph graph, ModuleIdentifier root) {
+		this(graph, root, graph.size() >= PARALLEL_THRESHOLD ? ForkJoinPool.commonPool() : null);
+	}
+
+	/**
+	 * @param pool the pool to run a level synchronous parallel search on, or {@code null} to search sequentially
+	 */
+	DependencyPathBFS(FrozenModuleGraph graph, ModuleIdentifier root, ForkJoinPool pool) {
 		this.root = root;
-		bfs(graph, root);
+		this.graph = graph;
+		this.marked = new BitSet(graph.size());
+		this.edgeTo = new int[graph.size()];
+		Arrays.fill(edgeTo, -1);
+		int rootNode = graph.indexOf(root);
+		if (rootNode >= 0) {
+			if (pool == null) {
+				bfs(rootNode);
+			} else {
+				parallelBfs(rootNode, pool);
+			}
+		}
 	}
 
-	private void bfs(ModuleGraph graph, ModuleIdentifier id){
-	    Queue<ModuleIdentifier> queue = new LinkedBlockingQueue<>();
-		marked.add(id);
-		queue.add(id);
-		while (!queue.isEmpty()) {
-		    ModuleIdentifier cur = queue.poll();
-		    for (ModuleDependency dep : graph.getDependencies(cur)) {
-		        ModuleIdentifier depId = dep.getToId();
-		        if (!marked.contains(depId)) {
-		            queue.add(depId);
-		            marked.add(depId);
-		            edgeTo.put(depId, cur);
-		            edges.add(new ModuleDependency(cur, depId, dep.isOptional()));
+	private void bfs(int node){
+		//Each node is only queued once, so the queue never needs to wrap
+		int[] queue = new int[graph.size()];
+		int head = 0;
+		int tail = 0;
+		marked.set(node);
+		queue[tail++] = node;
+		while (head < tail) {
+		    int cur = queue[head++];
+		    for (int edge = graph.firstEdge(cur) ; edge < graph.endEdge(cur) ; edge++) {
+		        int depNode = graph.getTarget(edge);
+		        if (!marked.get(depNode)) {
+		            queue[tail++] = depNode;
+		            marked.set(depNode);
+		            edgeTo[depNode] = cur;
 		        }
 		    }
 		}
 	}
 
+	/**
+	 * Breadth first search one level at a time, with the nodes of each level split between tasks. A task claims each
+	 * node it finds by setting its bit in the shared visited set, and only the task which claims a node records its
+	 * parent and adds it to its own part of the next level. Which of the parents on the previous level wins varies
+	 * from run to run, but the paths found are always shortest paths.
+	 */
+	private void parallelBfs(int node, ForkJoinPool pool) {
+		final AtomicLongArray visited = new AtomicLongArray((graph.size() + 63) >>> 6);
+		claim(visited, node);
+		int[] frontier = new int[] {node};
+		while (frontier.length > 0) {
+			int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, frontier.length / MIN_CHUNK_SIZE));
+			List<ForkJoinTask<int[]>> tasks = new ArrayList<>(chunks);
+			for (int chunk = 0 ; chunk < chunks ; chunk++) {
+				int from = (int)((long)frontier.length * chunk / chunks);
+				int to = (int)((long)frontier.length * (chunk + 1) / chunks);
+				tasks.add(pool.submit(new ExpandTask(frontier, from, to, visited)));
+			}
+			int[][] parts = new int[chunks][];
+			int size = 0;
+			for (int chunk = 0 ; chunk < chunks ; chunk++) {
+				parts[chunk] = tasks.get(chunk).join();
+				size += parts[chunk].length;
+			}
+			frontier = new int[size];
+			int offset = 0;
+			for (int[] part : parts) {
+				System.arraycopy(part, 0, frontier, offset, part.length);
+				offset += part.length;
+			}
+		}
+		long[] words = new long[visited.length()];
+		for (int i = 0 ; i < words.length ; i++) {
+			words[i] = visited.get(i);
+		}
+		marked.or(BitSet.valueOf(words));
+	}
+
+	/**
+	 * Sets the bit for a node.
+	 *
+	 * @return whether it was set by this call
+	 */
+	private static boolean claim(AtomicLongArray visited, int node) {
+		int word = node >>> 6;
+		long bit = 1L << node;
+		long current = visited.get(word);
+		while ((current & bit) == 0) {
+			if (visited.compareAndSet(word, current, current | bit)) {
+				return true;
+			}
+			current = visited.get(word);
+		}
+		return false;
+	}
+
+	/**
+	 * Expands part of a level, returning the nodes it claimed for the next level.
+	 */
+	private class ExpandTask implements Callable<int[]> {
+		private final int[] frontier;
+		private final int from;
+		private final int to;
+		private final AtomicLongArray visited;
+
+		ExpandTask(int[] frontier, int from, int to, AtomicLongArray visited) {
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+			this.visited = visited;
+		}
+
+		@Override
+		public int[] call() {
+			int[] next = new int[16];
+			int size = 0;
+			for (int i = from ; i < to ; i++) {
+				int cur = frontier[i];
+				for (int edge = graph.firstEdge(cur) ; edge < graph.endEdge(cur) ; edge++) {
+					int depNode = graph.getTarget(edge);
+					if (claim(visited, depNode)) {
+						edgeTo[depNode] = cur;
+						if (size == next.length) {
+							next = Arrays.copyOf(next, size * 2);
+						}
+						next[size++] = depNode;
+					}
+				}
+			}
+			return Arrays.copyOf(next, size);
+		}
+	}
+
 	boolean hasPathTo(ModuleIdentifier id){
-		return marked.contains(id);
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return root.equals(id);
+		}
+		return marked.get(node);
 	}
 
 	Set<ModuleIdentifier> getAllModules(){
-		return Collections.unmodifiableSet(marked);
+		if (allModules == null) {
+			Set<ModuleIdentifier> modules = graph.indexOf(root) < 0 ? Collections.singleton(root) : graph.getModules(marked);
+			allModules = Collections.unmodifiableSet(modules);
+		}
+		return allModules;
 	}
 
 	List<ModuleIdentifier> pathTo(ModuleIdentifier id){
-		if (!marked.contains(id)){
+		if (!hasPathTo(id)){
+			return Collections.emptyList();
+		}
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return Collections.singletonList(id);
+		}
+		return graph.pathTo(edgeTo, node);
+	}
+
+	/**
+	 * Finds a shortest dependency path between two modules with a bidirectional breadth first search: one search goes
+	 * forward from {@code from} and the other backwards from {@code to} over the {@link FrozenModuleGraph#reverse()}d
+	 * graph, expanding whichever frontier is smaller a level at a time, and it stops once they meet. Unlike
+	 * {@link #pathTo(ModuleIdentifier)} this does not need to visit everything reachable from {@code from}.
+	 *
+	 * @return the modules on the path, starting with {@code from} and ending with {@code to}, or an empty list if there is no path
+	 */
+	static List<ModuleIdentifier> shortestPath(FrozenModuleGraph graph, ModuleIdentifier from, ModuleIdentifier to) {
+		if (from.equals(to)) {
+			return Collections.singletonList(from);
+		}
+		int source = graph.indexOf(from);
+		int target = graph.indexOf(to);
+		if (source < 0 || target < 0) {
+			return Collections.emptyList();
+		}
+		Frontier forward = new Frontier(graph, source);
+		Frontier backward = new Frontier(graph.reverse(), target);
+		int meet = -1;
+		while (meet < 0 && !forward.isEmpty() && !backward.isEmpty()) {
+			if (forward.size() <= backward.size()) {
+				meet = forward.expandLevel(backward);
+			} else {
+				meet = backward.expandLevel(forward);
+			}
+		}
+		if (meet < 0) {
 			return Collections.emptyList();
 		}
+		List<ModuleIdentifier> path = new ArrayList<>();
+		for (int node = meet ; node >= 0 ; node = forward.parent[node]) {
+			path.add(graph.getModule(node));
+		}
+		Collections.reverse(path);
+		for (int node = backward.parent[meet] ; node >= 0 ; node = backward.parent[node]) {
+			path.add(graph.getModule(node));
+		}
+		return path;
+	}
+
+	/**
+	 * One side of the bidirectional search.
+	 */
+	private static class Frontier {
+		private final FrozenModuleGraph graph;
+		private final int[] queue;
+		private final int[] distance;
+		private final int[] parent;
+		private int head;
+		private int tail;
+
+		Frontier(FrozenModuleGraph graph, int start) {
+			this.graph = graph;
+			this.queue = new int[graph.size()];
+			this.distance = new int[graph.size()];
+			this.parent = new int[graph.size()];
+			Arrays.fill(distance, -1);
+			Arrays.fill(parent, -1);
+			distance[start] = 0;
+			queue[tail++] = start;
+		}
 
-		Stack<ModuleIdentifier> ids = new Stack<>();
-		ids.push(id);
-		ModuleIdentifier parent = edgeTo.get(id);
-		do {
-			ids.push(parent);
-			parent = edgeTo.get(parent);
-		} while (parent != null);
+		boolean isEmpty() {
+			return head == tail;
+		}
 
-		return Util.stackToReverseList(ids);
+		int size() {
+			return tail - head;
+		}
+
+		/**
+		 * Visits the next level of this side. All of it is visited even once the other side has been met, since a
+		 * later node in the level may meet the other side closer to its start.
+		 *
+		 * @return the meeting node giving the shortest path, or {@code -1} if the sides have not met yet
+		 */
+		int expandLevel(Frontier other) {
+			int meet = -1;
+			int best = Integer.MAX_VALUE;
+			int levelEnd = tail;
+			while (head < levelEnd) {
+				int node = queue[head++];
+				for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+					int next = graph.getTarget(edge);
+					if (distance[next] >= 0) {
+						continue;
+					}
+					distance[next] = distance[node] + 1;
+					parent[next] = node;
+					queue[tail++] = next;
+					if (other.distance[next] >= 0 && distance[next] + other.distance[next] < best) {
+						best = distance[next] + other.distance[next];
+						meet = next;
+					}
+				}
+			}
+			return meet;
+		}
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("CoreModules for " + root + ":{\n");
-		for (ModuleIdentifier id : marked) {
+		for (ModuleIdentifier id : getAllModules()) {
 			sb.append(" ");
 			sb.append(id);
 			sb.append("\n");
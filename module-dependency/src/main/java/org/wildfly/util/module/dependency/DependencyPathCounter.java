@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Counts the dependency paths from one module to another without enumerating them, by dynamic programming in
+ * topological order over the {@link CondensedModuleGraph}. It also counts how many of those paths go through each
+ * dependency.
+ * <p>
+ * Paths are counted over the condensed graph, so each dependency cycle counts as a single module. For a graph
+ * without cycles the count is the same as the number of paths found by {@link AllDependencyPathsDFS}.
+ */
+public class DependencyPathCounter {
+
+	private final FrozenModuleGraph graph;
+	private final CondensedModuleGraph condensed;
+	private final BigInteger[] fromRoot;
+	private final BigInteger[] toTarget;
+	private final int targetComponent;
+
+	DependencyPathCounter(ModuleGraph graph, ModuleIdentifier root, ModuleIdentifier target) {
+		this(graph.freeze(), root, target);
+	}
+
+	DependencyPathCounter(FrozenModuleGraph graph, ModuleIdentifier root, ModuleIdentifier target) {
+		this.graph = graph;
+		this.condensed = graph.getCondensedGraph();
+		int count = condensed.getComponentCount();
+		this.fromRoot = new BigInteger[count];
+		this.toTarget = new BigInteger[count];
+		int rootComponent = condensed.getComponent(root);
+		this.targetComponent = condensed.getComponent(target);
+		if (rootComponent < 0 || targetComponent < 0) {
+			return;
+		}
+
+		//Dependents come before their dependencies when going down from the highest component
+		fromRoot[rootComponent] = BigInteger.ONE;
+		for (int c = rootComponent ; c >= 0 ; c--) {
+			if (fromRoot[c] == null) {
+				continue;
+			}
+			for (int edge = condensed.firstEdge(c) ; edge < condensed.endEdge(c) ; edge++) {
+				int d = condensed.getTarget(edge);
+				fromRoot[d] = add(fromRoot[d], fromRoot[c].multiply(BigInteger.valueOf(condensed.getMultiplicity(edge))));
+			}
+		}
+
+		//and dependencies come before their dependents when going up from the lowest
+		toTarget[targetComponent] = BigInteger.ONE;
+		for (int c = targetComponent + 1 ; c < count ; c++) {
+			BigInteger paths = null;
+			for (int edge = condensed.firstEdge(c) ; edge < condensed.endEdge(c) ; edge++) {
+				BigInteger targetPaths = toTarget[condensed.getTarget(edge)];
+				if (targetPaths != null) {
+					paths = add(paths, targetPaths.multiply(BigInteger.valueOf(condensed.getMultiplicity(edge))));
+				}
+			}
+			toTarget[c] = paths;
+		}
+	}
+
+	private static BigInteger add(BigInteger a, BigInteger b) {
+		return a == null ? b : a.add(b);
+	}
+
+	/**
+	 * Gets the number of paths from the root to the target.
+	 */
+	public BigInteger getPathCount() {
+		if (targetComponent < 0 || fromRoot[targetComponent] == null) {
+			return BigInteger.ZERO;
+		}
+		return fromRoot[targetComponent];
+	}
+
+	/**
+	 * Gets the number of paths from the root to the target which go through a dependency. Dependencies within a
+	 * dependency cycle are not counted.
+	 */
+	public BigInteger getPathCount(ModuleDependency dep) {
+		int from = graph.indexOf(dep.getFromId());
+		int to = graph.indexOf(dep.getToId());
+		if (from < 0 || to < 0) {
+			return BigInteger.ZERO;
+		}
+		return getPathCount(condensed.getComponent(from), condensed.getComponent(to));
+	}
+
+	private BigInteger getPathCount(int fromComponent, int toComponent) {
+		if (fromComponent == toComponent || fromRoot[fromComponent] == null || toTarget[toComponent] == null) {
+			return BigInteger.ZERO;
+		}
+		return fromRoot[fromComponent].multiply(toTarget[toComponent]);
+	}
+
+	/**
+	 * Gets the dependencies lying on at least one path from the root to the target, with the number of paths going
+	 * through each. The dependencies carrying the most paths come first.
+	 */
+	public Map<ModuleDependency, BigInteger> getEdgeCounts() {
+		List<Map.Entry<ModuleDependency, BigInteger>> entries = new ArrayList<>();
+		for (int node = 0 ; node < graph.size() ; node++) {
+			int fromComponent = condensed.getComponent(node);
+			if (fromRoot[fromComponent] == null) {
+				continue;
+			}
+			for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+				int to = graph.getTarget(edge);
+				BigInteger paths = getPathCount(fromComponent, condensed.getComponent(to));
+				if (paths.signum() > 0) {
+					ModuleDependency dep = new ModuleDependency(graph.getModule(node), graph.getModule(to), graph.isOptional(edge));
+					entries.add(new AbstractMap.SimpleImmutableEntry<>(dep, paths));
+				}
+			}
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<ModuleDependency, BigInteger>>() {
+			@Override
+			public int compare(Map.Entry<ModuleDependency, BigInteger> o1, Map.Entry<ModuleDependency, BigInteger> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		Map<ModuleDependency, BigInteger> counts = new LinkedHashMap<>();
+		for (Map.Entry<ModuleDependency, BigInteger> entry : entries) {
+			counts.put(entry.getKey(), entry.getValue());
+		}
+		return counts;
+	}
+}
@@ -22,81 +22,133 @@
 
 package org.wildfly.util.module.dependency;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 import org.jboss.modules.ModuleIdentifier;
 
 public class DependencyPathDFS {
 
 	private final ModuleIdentifier root;
-	private final Set<ModuleIdentifier> marked = new HashSet<>();
-	private final Map<ModuleIdentifier, ModuleIdentifier> edgeTo = new HashMap<ModuleIdentifier, ModuleIdentifier>();
-    private final Set<ModuleDependency> edges = new HashSet<>();//TODO get better paths with optional dependency information
-    private final EndSearchCondition endSearchCondition;
+	private final FrozenModuleGraph graph;
+	private final BitSet marked;
+	private final int[] edgeTo;
+	//The shortest distance found to each node, only kept if the stop condition looks at the depth
+	private final int[] depths;
+    private final StopCondition.Compiled stopCondition;
+    private Set<ModuleIdentifier> allModules;
 
 
     DependencyPathDFS(ModuleGraph graph, ModuleIdentifier root) {
-        this(graph, root, EndSearchCondition.NO_OP);
+        this(graph, root, StopCondition.NEVER);
     }
 
 	DependencyPathDFS(ModuleGraph graph, ModuleIdentifier root, EndSearchCondition endSearchCondition) {
-		this.root = root;
-		this.endSearchCondition = endSearchCondition;
-		dfs(graph, root);
+		this(graph.freeze(), root, StopCondition.of(endSearchCondition));
+	}
+
+	DependencyPathDFS(FrozenModuleGraph graph, ModuleIdentifier root, EndSearchCondition endSearchCondition) {
+		this(graph, root, StopCondition.of(endSearchCondition));
+	}
+
+	DependencyPathDFS(ModuleGraph graph, ModuleIdentifier root, StopCondition stopCondition) {
+		this(graph.freeze(), root, stopCondition);
 	}
 
-	private void dfs(ModuleGraph graph, ModuleIdentifier id){
-		marked.add(id);
-		Set<ModuleDependency> deps = graph.getDependencies(id);
-		if (deps == null){
-			return;
+	DependencyPathDFS(FrozenModuleGraph graph, ModuleIdentifier root, StopCondition stopCondition) {
+		this.root = root;
+		this.graph = graph;
+		this.stopCondition = stopCondition.compile(graph);
+		this.depths = stopCondition.usesDepth() ? new int[graph.size()] : null;
+		this.marked = new BitSet(graph.size());
+		this.edgeTo = new int[graph.size()];
+		Arrays.fill(edgeTo, -1);
+		int rootNode = graph.indexOf(root);
+		if (rootNode >= 0) {
+			dfs(rootNode);
 		}
-		for (ModuleDependency dep : deps){
-			ModuleIdentifier depId = dep.getToId();
-			if (!marked.contains(depId)){
-				edgeTo.put(depId, id);
-				edges.add(new ModuleDependency(id, depId, dep.isOptional()));
-				if (!endSearchCondition.endSearch(id, dep)) {
-				    dfs(graph, depId);
+	}
+
+	/**
+	 * Iterative depth first search, visiting the nodes in the same order as the recursive version would. Each frame
+	 * on the stack holds a node and the next of its edges to follow, and a node is only pushed once. The depth of
+	 * the node on top of the stack, as given to the stop condition, is its distance from the root along the path
+	 * the search took to it. If the stop condition looks at the depth, a node reached again by a shorter path is
+	 * pushed again, so that what it was stopped from reaching before gets searched.
+	 */
+	private void dfs(int rootNode){
+		int[] stack = new int[graph.size()];
+		int[] nextEdge = new int[graph.size()];
+		int top = 0;
+		stack[top] = rootNode;
+		nextEdge[top] = graph.firstEdge(rootNode);
+		marked.set(rootNode);
+		while (top >= 0) {
+			int node = stack[top];
+			int edge = nextEdge[top];
+			if (edge == graph.endEdge(node)) {
+				top--;
+				continue;
+			}
+			nextEdge[top] = edge + 1;
+			int depNode = graph.getTarget(edge);
+			boolean push;
+			if (!marked.get(depNode)){
+				edgeTo[depNode] = node;
+				push = !stopCondition.endSearch(node, edge, top);
+			} else {
+				//A node on the stack is never deeper than the top, so this only pushes nodes which are not on it
+				push = depths != null && depths[depNode] > top + 1 && !stopCondition.endSearch(node, edge, top);
+				if (push) {
+					edgeTo[depNode] = node;
+				}
+			}
+			if (push) {
+				marked.set(depNode);
+				top++;
+				stack[top] = depNode;
+				nextEdge[top] = graph.firstEdge(depNode);
+				if (depths != null) {
+					depths[depNode] = top;
 				}
 			}
 		}
 	}
 
 	boolean isCoreDependency(ModuleIdentifier id){
-		return marked.contains(id);
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return root.equals(id);
+		}
+		return marked.get(node);
 	}
 
 	Set<ModuleIdentifier> getAllModules(){
-		return Collections.unmodifiableSet(marked);
+		if (allModules == null) {
+			Set<ModuleIdentifier> modules = graph.indexOf(root) < 0 ? Collections.singleton(root) : graph.getModules(marked);
+			allModules = Collections.unmodifiableSet(modules);
+		}
+		return allModules;
 	}
 
 	List<ModuleIdentifier> simplePathTo(ModuleIdentifier id){
-		if (!marked.contains(id)){
+		if (!isCoreDependency(id)){
 			return Collections.emptyList();
 		}
-
-		Stack<ModuleIdentifier> ids = new Stack<>();
-		ids.push(id);
-		ModuleIdentifier parent = edgeTo.get(id);
-		do {
-			ids.push(parent);
-			parent = edgeTo.get(parent);
-		} while (parent != null);
-
-		return Util.stackToReverseList(ids);
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return Collections.singletonList(id);
+		}
+		return graph.pathTo(edgeTo, node);
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("CoreModules for " + root + ":{\n");
-		for (ModuleIdentifier id : marked) {
+		for (ModuleIdentifier id : getAllModules()) {
 			sb.append(" ");
 			sb.append(id);
 			sb.append("\n");
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * The dominator tree of the modules reachable from a root module, found with the iterative algorithm of Cooper,
+ * Harvey and Kennedy. A module dominates another if it is on every path from the root to it, i.e. the other module
+ * can no longer be reached if it is removed. Every reachable module dominates itself, and the root dominates them all.
+ */
+public class DominatorTree {
+
+	private final FrozenModuleGraph graph;
+	private final ModuleIdentifier root;
+	private final int[] idom;
+	private final int[] preOrder;
+	private final int[] subtreeSize;
+
+	DominatorTree(ModuleGraph graph, ModuleIdentifier root) {
+		this(graph.freeze(), root);
+	}
+
+	DominatorTree(FrozenModuleGraph graph, ModuleIdentifier root) {
+		this.graph = graph;
+		this.root = root;
+		this.idom = new int[graph.size()];
+		this.preOrder = new int[graph.size()];
+		this.subtreeSize = new int[graph.size()];
+		Arrays.fill(idom, -1);
+		Arrays.fill(preOrder, -1);
+		int rootNode = graph.indexOf(root);
+		if (rootNode < 0) {
+			return;
+		}
+
+		//Number the reachable nodes in reverse postorder, which the algorithm needs to converge quickly
+		int[] rpo = new int[graph.size()];
+		Arrays.fill(rpo, -1);
+		int[] order = reversePostOrder(rootNode, rpo);
+
+		FrozenModuleGraph reverse = graph.reverse();
+		idom[rootNode] = rootNode;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1 ; i < order.length ; i++) {
+				int node = order[i];
+				int newIdom = -1;
+				for (int edge = reverse.firstEdge(node) ; edge < reverse.endEdge(node) ; edge++) {
+					int pred = reverse.getTarget(edge);
+					if (rpo[pred] < 0 || idom[pred] < 0) {
+						continue;
+					}
+					newIdom = newIdom < 0 ? pred : intersect(pred, newIdom, rpo);
+				}
+				if (idom[node] != newIdom) {
+					idom[node] = newIdom;
+					changed = true;
+				}
+			}
+		}
+		numberTree(rootNode, order);
+	}
+
+	/**
+	 * Walks up from two nodes to their nearest common dominator.
+	 */
+	private int intersect(int a, int b, int[] rpo) {
+		while (a != b) {
+			while (rpo[a] > rpo[b]) {
+				a = idom[a];
+			}
+			while (rpo[b] > rpo[a]) {
+				b = idom[b];
+			}
+		}
+		return a;
+	}
+
+	private int[] reversePostOrder(int rootNode, int[] rpo) {
+		int[] postOrder = new int[graph.size()];
+		int count = 0;
+		boolean[] marked = new boolean[graph.size()];
+		int[] stack = new int[graph.size()];
+		int[] nextEdge = new int[graph.size()];
+		int top = 0;
+		stack[top] = rootNode;
+		nextEdge[top] = graph.firstEdge(rootNode);
+		marked[rootNode] = true;
+		while (top >= 0) {
+			int node = stack[top];
+			int edge = nextEdge[top];
+			if (edge == graph.endEdge(node)) {
+				postOrder[count++] = node;
+				top--;
+				continue;
+			}
+			nextEdge[top] = edge + 1;
+			int target = graph.getTarget(edge);
+			if (!marked[target]) {
+				marked[target] = true;
+				top++;
+				stack[top] = target;
+				nextEdge[top] = graph.firstEdge(target);
+			}
+		}
+		int[] order = new int[count];
+		for (int i = 0 ; i < count ; i++) {
+			order[i] = postOrder[count - 1 - i];
+			rpo[order[i]] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * Numbers the dominator tree in preorder and works out the size of each subtree, so that a node dominates
+	 * exactly the nodes numbered from it up to its number plus the size of its subtree.
+	 */
+	private void numberTree(int rootNode, int[] nodes) {
+		//Children of each node in the tree, in compressed sparse row form
+		int[] offsets = new int[graph.size() + 1];
+		for (int node : nodes) {
+			if (node != rootNode) {
+				offsets[idom[node] + 1]++;
+			}
+		}
+		for (int node = 0 ; node < graph.size() ; node++) {
+			offsets[node + 1] += offsets[node];
+		}
+		int[] children = new int[nodes.length];
+		int[] fill = Arrays.copyOf(offsets, graph.size());
+		for (int node : nodes) {
+			if (node != rootNode) {
+				children[fill[idom[node]]++] = node;
+			}
+		}
+
+		int[] order = new int[nodes.length];
+		int count = 0;
+		int[] stack = new int[nodes.length];
+		int top = 0;
+		stack[top] = rootNode;
+		while (top >= 0) {
+			int node = stack[top--];
+			preOrder[node] = count;
+			order[count++] = node;
+			for (int i = offsets[node] ; i < offsets[node + 1] ; i++) {
+				stack[++top] = children[i];
+			}
+		}
+		for (int i = count - 1 ; i >= 0 ; i--) {
+			int node = order[i];
+			subtreeSize[node]++;
+			if (node != rootNode) {
+				subtreeSize[idom[node]] += subtreeSize[node];
+			}
+		}
+	}
+
+	public ModuleIdentifier getRoot() {
+		return root;
+	}
+
+	/**
+	 * Gets the immediate dominator of a module, i.e. its closest dominator apart from itself.
+	 *
+	 * @return the immediate dominator, or {@code null} for the root and for modules not reachable from it
+	 */
+	public ModuleIdentifier getImmediateDominator(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0 || idom[node] < 0 || idom[node] == node) {
+			return null;
+		}
+		return graph.getModule(idom[node]);
+	}
+
+	/**
+	 * Whether a module is on every path from the root to another module.
+	 *
+	 * @return whether {@code dominator} dominates {@code id}, which is false if {@code id} is not reachable from the root
+	 */
+	public boolean dominates(ModuleIdentifier dominator, ModuleIdentifier id) {
+		int dominatorNode = graph.indexOf(dominator);
+		int node = graph.indexOf(id);
+		if (dominatorNode < 0 || node < 0) {
+			return false;
+		}
+		return dominates(dominatorNode, node);
+	}
+
+	boolean dominates(int dominator, int node) {
+		if (preOrder[dominator] < 0 || preOrder[node] < 0) {
+			return false;
+		}
+		return preOrder[dominator] <= preOrder[node] && preOrder[node] < preOrder[dominator] + subtreeSize[dominator];
+	}
+
+	/**
+	 * Gets the modules on every path from the root to a module, starting with the root and ending with the module.
+	 *
+	 * @return the dominators, or an empty list if the module is not reachable from the root
+	 */
+	public List<ModuleIdentifier> getDominators(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0 || idom[node] < 0) {
+			return Collections.emptyList();
+		}
+		List<ModuleIdentifier> dominators = new ArrayList<>();
+		for (int current = node ; ; current = idom[current]) {
+			dominators.add(graph.getModule(current));
+			if (idom[current] == current) {
+				break;
+			}
+		}
+		Collections.reverse(dominators);
+		return dominators;
+	}
+
+	/**
+	 * Gets the modules dominated by a module, not including the module itself. These are the modules which can no
+	 * longer be reached from the root if the module is removed.
+	 */
+	public Set<ModuleIdentifier> getDominatedModules(ModuleIdentifier id) {
+		Set<ModuleIdentifier> dominated = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		int dominator = graph.indexOf(id);
+		if (dominator < 0 || preOrder[dominator] < 0) {
+			return dominated;
+		}
+		for (int node = 0 ; node < graph.size() ; node++) {
+			if (node != dominator && dominates(dominator, node)) {
+				dominated.add(graph.getModule(node));
+			}
+		}
+		return dominated;
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Immutable form of a {@link ModuleGraph}. Every module is interned to a dense int id, and the edges are held in
+ * compressed sparse row form: the dependencies of node {@code n} are the edges {@code firstEdge(n)} up to
+ * (but not including) {@code endEdge(n)}, {@code getTarget(edge)} gives the node an edge points to and
+ * {@code isOptional(edge)} whether it is an optional dependency.
+ */
+public final class FrozenModuleGraph {
+
+	private final ModuleIdentifier[] ids;
+	private final Map<ModuleIdentifier, Integer> index;
+	private final int[] offsets;
+	private final int[] targets;
+	private final BitSet optional;
+	private volatile FrozenModuleGraph reverse;
+	private volatile CondensedModuleGraph condensedGraph;
+	private volatile ReachabilityIndex reachabilityIndex;
+
+	FrozenModuleGraph(Map<ModuleIdentifier, Set<ModuleDependency>> modules) {
+		Map<ModuleIdentifier, Integer> index = new HashMap<>(modules.size() * 2);
+		List<ModuleIdentifier> ids = new ArrayList<>(modules.size());
+		int edgeCount = 0;
+		for (Map.Entry<ModuleIdentifier, Set<ModuleDependency>> entry : modules.entrySet()) {
+			intern(entry.getKey(), index, ids);
+			edgeCount += entry.getValue().size();
+		}
+		for (Set<ModuleDependency> deps : modules.values()) {
+			for (ModuleDependency dep : deps) {
+				intern(dep.getToId(), index, ids);
+			}
+		}
+
+		this.ids = ids.toArray(new ModuleIdentifier[ids.size()]);
+		this.index = index;
+		this.offsets = new int[this.ids.length + 1];
+		this.targets = new int[edgeCount];
+		this.optional = new BitSet(edgeCount);
+
+		int edge = 0;
+		for (int node = 0 ; node < this.ids.length ; node++) {
+			offsets[node] = edge;
+			Set<ModuleDependency> deps = modules.get(this.ids[node]);
+			if (deps != null) {
+				for (ModuleDependency dep : deps) {
+					targets[edge] = index.get(dep.getToId());
+					if (dep.isOptional()) {
+						optional.set(edge);
+					}
+					edge++;
+				}
+			}
+		}
+		offsets[this.ids.length] = edge;
+	}
+
+	private FrozenModuleGraph(ModuleIdentifier[] ids, Map<ModuleIdentifier, Integer> index, int[] offsets, int[] targets, BitSet optional) {
+		this.ids = ids;
+		this.index = index;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.optional = optional;
+	}
+
+	private static void intern(ModuleIdentifier id, Map<ModuleIdentifier, Integer> index, List<ModuleIdentifier> ids) {
+		if (!index.containsKey(id)) {
+			index.put(id, ids.size());
+			ids.add(id);
+		}
+	}
+
+	/**
+	 * Gets the number of modules, including the ones which are only known as the target of a dependency.
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	/**
+	 * Gets the node for a module.
+	 *
+	 * @param id the module
+	 * @return the node, or {@code -1} if the module is not in the graph
+	 */
+	public int indexOf(ModuleIdentifier id) {
+		Integer node = index.get(id);
+		return node == null ? -1 : node;
+	}
+
+	public ModuleIdentifier getModule(int node) {
+		return ids[node];
+	}
+
+	public int firstEdge(int node) {
+		return offsets[node];
+	}
+
+	public int endEdge(int node) {
+		return offsets[node + 1];
+	}
+
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	public boolean isOptional(int edge) {
+		return optional.get(edge);
+	}
+
+	/**
+	 * Gets the graph with every edge pointing the other way, i.e. from a module to the modules depending on it. The
+	 * nodes are numbered the same in both graphs. It is built on first use.
+	 */
+	public FrozenModuleGraph reverse() {
+		FrozenModuleGraph reverse = this.reverse;
+		if (reverse == null) {
+			synchronized (this) {
+				reverse = this.reverse;
+				if (reverse == null) {
+					int[] reverseOffsets = new int[offsets.length];
+					for (int edge = 0 ; edge < targets.length ; edge++) {
+						reverseOffsets[targets[edge] + 1]++;
+					}
+					for (int node = 0 ; node < ids.length ; node++) {
+						reverseOffsets[node + 1] += reverseOffsets[node];
+					}
+					int[] reverseTargets = new int[targets.length];
+					BitSet reverseOptional = new BitSet(targets.length);
+					int[] fill = Arrays.copyOf(reverseOffsets, ids.length);
+					for (int node = 0 ; node < ids.length ; node++) {
+						for (int edge = offsets[node] ; edge < offsets[node + 1] ; edge++) {
+							int reverseEdge = fill[targets[edge]]++;
+							reverseTargets[reverseEdge] = node;
+							if (optional.get(edge)) {
+								reverseOptional.set(reverseEdge);
+							}
+						}
+					}
+					reverse = new FrozenModuleGraph(ids, index, reverseOffsets, reverseTargets, reverseOptional);
+					reverse.reverse = this;
+					this.reverse = reverse;
+				}
+			}
+		}
+		return reverse;
+	}
+
+	/**
+	 * Gets a copy of this graph without the optional dependencies, with the nodes numbered the same.
+	 */
+	FrozenModuleGraph withoutOptionalDependencies() {
+		int[] filteredOffsets = new int[offsets.length];
+		int[] filteredTargets = new int[targets.length - optional.cardinality()];
+		int edgeCount = 0;
+		for (int node = 0 ; node < ids.length ; node++) {
+			filteredOffsets[node] = edgeCount;
+			for (int edge = offsets[node] ; edge < offsets[node + 1] ; edge++) {
+				if (!optional.get(edge)) {
+					filteredTargets[edgeCount++] = targets[edge];
+				}
+			}
+		}
+		filteredOffsets[ids.length] = edgeCount;
+		return new FrozenModuleGraph(ids, index, filteredOffsets, filteredTargets, new BitSet());
+	}
+
+	/**
+	 * Gets the DAG of the strongly connected components of this graph, which is built on first use.
+	 */
+	public CondensedModuleGraph getCondensedGraph() {
+		CondensedModuleGraph condensedGraph = this.condensedGraph;
+		if (condensedGraph == null) {
+			synchronized (this) {
+				condensedGraph = this.condensedGraph;
+				if (condensedGraph == null) {
+					condensedGraph = new CondensedModuleGraph(this);
+					this.condensedGraph = condensedGraph;
+				}
+			}
+		}
+		return condensedGraph;
+	}
+
+	/**
+	 * Gets the transitive closure index of this graph, which is built on first use.
+	 */
+	public ReachabilityIndex getReachabilityIndex() {
+		ReachabilityIndex reachabilityIndex = this.reachabilityIndex;
+		if (reachabilityIndex == null) {
+			synchronized (this) {
+				reachabilityIndex = this.reachabilityIndex;
+				if (reachabilityIndex == null) {
+					reachabilityIndex = new ReachabilityIndex(getCondensedGraph());
+					this.reachabilityIndex = reachabilityIndex;
+				}
+			}
+		}
+		return reachabilityIndex;
+	}
+
+	/**
+	 * Compatibility view of the dependencies of a module, as returned by {@link ModuleGraph#getDependencies(ModuleIdentifier)}.
+	 * A new set is created for each call.
+	 */
+	public Set<ModuleDependency> getDependencies(ModuleIdentifier id) {
+		int node = indexOf(id);
+		if (node < 0 || firstEdge(node) == endEdge(node)) {
+			return Collections.emptySet();
+		}
+		Set<ModuleDependency> deps = new HashSet<>();
+		for (int edge = firstEdge(node) ; edge < endEdge(node) ; edge++) {
+			deps.add(new ModuleDependency(id, ids[targets[edge]], optional.get(edge)));
+		}
+		return Collections.unmodifiableSet(deps);
+	}
+
+	/**
+	 * Gets the nodes reachable from a node, including the node itself. Call this on the {@link #reverse()} graph to
+	 * get the nodes which can reach a node instead.
+	 */
+	BitSet reachableFrom(int node) {
+		BitSet marked = new BitSet(ids.length);
+		int[] queue = new int[ids.length];
+		int head = 0;
+		int tail = 0;
+		marked.set(node);
+		queue[tail++] = node;
+		while (head < tail) {
+			int current = queue[head++];
+			for (int edge = offsets[current] ; edge < offsets[current + 1] ; edge++) {
+				int target = targets[edge];
+				if (!marked.get(target)) {
+					marked.set(target);
+					queue[tail++] = target;
+				}
+			}
+		}
+		return marked;
+	}
+
+	/**
+	 * Gets the modules for a set of nodes.
+	 */
+	Set<ModuleIdentifier> getModules(BitSet nodes) {
+		Set<ModuleIdentifier> modules = new HashSet<>(nodes.cardinality() * 2);
+		for (int node = nodes.nextSetBit(0) ; node >= 0 ; node = nodes.nextSetBit(node + 1)) {
+			modules.add(ids[node]);
+		}
+		return modules;
+	}
+
+	/**
+	 * Gets the modules on a path made up of the parent links from {@code node}. The first module in the list
+	 * is the one without a parent.
+	 *
+	 * @param parents the parent of each node, or {@code -1} if it has none
+	 */
+	List<ModuleIdentifier> pathTo(int[] parents, int node) {
+		List<ModuleIdentifier> path = new ArrayList<>();
+		for (int current = node ; current >= 0 ; current = parents[current]) {
+			path.add(ids[current]);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+}
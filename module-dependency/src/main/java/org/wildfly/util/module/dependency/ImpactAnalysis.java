@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Finds the modules, and the subsystems, affected by patching a module, i.e. all the modules depending on it directly
+ * or indirectly. The affected modules are looked up in the {@link ReachabilityIndex} of the
+ * {@link FrozenModuleGraph#reverse()}d graph, which is built once and shared by all the queries, so patching a batch
+ * of different modules does not search the graph for each. The shortest dependency chain from each affected module
+ * to the patched module needs a breadth first search of its own, which is only done the first time a chain is asked
+ * for. The impact of the most recently queried modules is cached.
+ */
+public class ImpactAnalysis {
+
+	static final int DEFAULT_CACHE_SIZE = 64;
+
+	private final FrozenModuleGraph graph;
+	private final FrozenModuleGraph reverse;
+	private final ReachabilityIndex dependents;
+	private final BitSet subsystems;
+	private final Map<ModuleIdentifier, Impact> cache;
+
+	ImpactAnalysis(ModuleGraph graph, Subsystems subsystems) {
+		this(graph.freeze(), subsystems.getNames(), DEFAULT_CACHE_SIZE);
+	}
+
+	ImpactAnalysis(FrozenModuleGraph graph, Collection<ModuleIdentifier> subsystems, final int cacheSize) {
+		if (cacheSize < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1: " + cacheSize);
+		}
+		this.graph = graph;
+		this.reverse = graph.reverse();
+		this.dependents = reverse.getReachabilityIndex();
+		this.subsystems = new BitSet(graph.size());
+		for (ModuleIdentifier id : subsystems) {
+			int node = graph.indexOf(id);
+			if (node >= 0) {
+				this.subsystems.set(node);
+			}
+		}
+		this.cache = new LinkedHashMap<ModuleIdentifier, Impact>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ModuleIdentifier, Impact> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets the impact of patching a module.
+	 */
+	public Impact getImpact(ModuleIdentifier patched) {
+		synchronized (cache) {
+			Impact impact = cache.get(patched);
+			if (impact != null) {
+				return impact;
+			}
+		}
+		Impact impact = new Impact(patched);
+		synchronized (cache) {
+			cache.put(patched, impact);
+		}
+		return impact;
+	}
+
+	/**
+	 * Gets the impact of patching each of a number of modules, sorted by module.
+	 */
+	public Map<ModuleIdentifier, Impact> getImpact(Collection<ModuleIdentifier> patched) {
+		Map<ModuleIdentifier, Impact> impacts = new TreeMap<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (ModuleIdentifier id : patched) {
+			impacts.put(id, getImpact(id));
+		}
+		return impacts;
+	}
+
+	int getCachedCount() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * The modules depending on a patched module.
+	 */
+	public class Impact {
+		private final ModuleIdentifier patched;
+		private final int patchedNode;
+		private final BitSet affected;
+		//The next module on the shortest chain from each affected module to the patched one, found on first use
+		private int[] next;
+
+		private Impact(ModuleIdentifier patched) {
+			this.patched = patched;
+			this.patchedNode = graph.indexOf(patched);
+			if (patchedNode < 0) {
+				this.affected = new BitSet();
+				return;
+			}
+			this.affected = dependents.closureOf(patchedNode);
+			affected.clear(patchedNode);
+		}
+
+		private synchronized int[] getNext() {
+			if (next != null) {
+				return next;
+			}
+			next = new int[graph.size()];
+			Arrays.fill(next, -1);
+			int[] queue = new int[graph.size()];
+			int head = 0;
+			int tail = 0;
+			BitSet marked = new BitSet(graph.size());
+			marked.set(patchedNode);
+			queue[tail++] = patchedNode;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int edge = reverse.firstEdge(node) ; edge < reverse.endEdge(node) ; edge++) {
+					int dependent = reverse.getTarget(edge);
+					if (!marked.get(dependent)) {
+						marked.set(dependent);
+						next[dependent] = node;
+						queue[tail++] = dependent;
+					}
+				}
+			}
+			return next;
+		}
+
+		public ModuleIdentifier getPatchedModule() {
+			return patched;
+		}
+
+		/**
+		 * Gets all the modules depending on the patched module, not including the patched module itself.
+		 */
+		public Set<ModuleIdentifier> getAffectedModules() {
+			Set<ModuleIdentifier> modules = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+			modules.addAll(graph.getModules(affected));
+			return modules;
+		}
+
+		public boolean isAffected(ModuleIdentifier id) {
+			int node = graph.indexOf(id);
+			return node >= 0 && affected.get(node);
+		}
+
+		/**
+		 * Gets a shortest dependency chain from an affected module to the patched module.
+		 *
+		 * @return the chain, starting with {@code id} and ending with the patched module, or an empty list if
+		 *         {@code id} is not affected
+		 */
+		public List<ModuleIdentifier> getChain(ModuleIdentifier id) {
+			if (!isAffected(id)) {
+				return Collections.emptyList();
+			}
+			int[] next = getNext();
+			List<ModuleIdentifier> chain = new ArrayList<>();
+			int node = graph.indexOf(id);
+			chain.add(id);
+			do {
+				node = next[node];
+				chain.add(graph.getModule(node));
+			} while (next[node] >= 0);
+			return chain;
+		}
+
+		/**
+		 * Gets the affected subsystems, with a shortest dependency chain from each to the patched module.
+		 */
+		public Map<ModuleIdentifier, List<ModuleIdentifier>> getAffectedSubsystems() {
+			Map<ModuleIdentifier, List<ModuleIdentifier>> chains = new TreeMap<>(Util.MODULE_ID_SLOT_COMPARATOR);
+			BitSet affectedSubsystems = (BitSet)affected.clone();
+			affectedSubsystems.and(subsystems);
+			for (int node = affectedSubsystems.nextSetBit(0) ; node >= 0 ; node = affectedSubsystems.nextSetBit(node + 1)) {
+				ModuleIdentifier id = graph.getModule(node);
+				chains.put(id, getChain(id));
+			}
+			return chains;
+		}
+
+		/**
+		 * Gets the affected modules grouped by the affected subsystems depending on them. A module appears under
+		 * every subsystem depending on it, and a subsystem is not listed under itself.
+		 */
+		public Map<ModuleIdentifier, Set<ModuleIdentifier>> getAffectedModulesBySubsystem() {
+			Map<ModuleIdentifier, Set<ModuleIdentifier>> modules = new TreeMap<>(Util.MODULE_ID_SLOT_COMPARATOR);
+			ReachabilityIndex dependencies = graph.getReachabilityIndex();
+			for (int node = affected.nextSetBit(0) ; node >= 0 ; node = affected.nextSetBit(node + 1)) {
+				if (subsystems.get(node)) {
+					BitSet reached = dependencies.closureOf(node);
+					reached.and(affected);
+					reached.clear(node);
+					Set<ModuleIdentifier> ids = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+					ids.addAll(graph.getModules(reached));
+					modules.put(graph.getModule(node), ids);
+				}
+			}
+			return modules;
+		}
+
+		/**
+		 * Gets the affected modules which are not subsystems, and which no affected subsystem depends on.
+		 */
+		public Set<ModuleIdentifier> getAffectedModulesWithoutSubsystem() {
+			BitSet remaining = (BitSet)affected.clone();
+			remaining.andNot(subsystems);
+			ReachabilityIndex dependencies = graph.getReachabilityIndex();
+			for (int node = affected.nextSetBit(0) ; node >= 0 ; node = affected.nextSetBit(node + 1)) {
+				if (subsystems.get(node)) {
+					remaining.andNot(dependencies.closureOf(node));
+				}
+			}
+			Set<ModuleIdentifier> ids = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+			ids.addAll(graph.getModules(remaining));
+			return ids;
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Finds the {@code k} shortest loopless dependency paths from one module to another with Yen's algorithm. Each path
+ * after the first is the cheapest deviation from one of the paths already found, so this takes time polynomial in
+ * {@code k} rather than enumerating every path like {@link AllDependencyPathsDFS}.
+ * <p>
+ * Every dependency costs one. When preferring non-optional dependencies an optional one costs more than any path
+ * made up of non-optional dependencies only, so paths are ranked by their number of optional dependencies first and
+ * by their length second.
+ */
+public class KShortestDependencyPaths {
+
+	private final FrozenModuleGraph graph;
+	private final long optionalCost;
+	private final int source;
+	private final List<int[]> paths = new ArrayList<>();
+
+	KShortestDependencyPaths(ModuleGraph graph, ModuleIdentifier from, ModuleIdentifier to, int k, boolean preferNonOptional) {
+		this(graph.freeze(), from, to, k, preferNonOptional);
+	}
+
+	KShortestDependencyPaths(FrozenModuleGraph graph, ModuleIdentifier from, ModuleIdentifier to, int k, boolean preferNonOptional) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1: " + k);
+		}
+		this.graph = graph;
+		this.optionalCost = preferNonOptional ? graph.size() : 1;
+		this.source = graph.indexOf(from);
+		int target = graph.indexOf(to);
+		if (source < 0 || target < 0) {
+			return;
+		}
+		if (source == target) {
+			paths.add(new int[0]);
+			return;
+		}
+		findPaths(source, target, k);
+	}
+
+	/**
+	 * Yen's algorithm. Paths are held as the edges making them up.
+	 */
+	private void findPaths(int source, int target, int k) {
+		BitSet bannedNodes = new BitSet(graph.size());
+		BitSet bannedEdges = new BitSet(graph.getEdgeCount());
+		int[] first = shortestPath(source, target, bannedNodes, bannedEdges);
+		if (first == null) {
+			return;
+		}
+		paths.add(first);
+
+		PriorityQueue<Candidate> candidates = new PriorityQueue<>(11, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+				if (o1.cost != o2.cost) {
+					return o1.cost < o2.cost ? -1 : 1;
+				}
+				return o1.order - o2.order;
+			}
+		});
+		Set<List<Integer>> seen = new HashSet<>();
+		seen.add(asList(first));
+		int order = 0;
+		while (paths.size() < k) {
+			int[] previous = paths.get(paths.size() - 1);
+			//Deviate from the previous path at each of its nodes in turn, keeping the part of the path up to there
+			for (int i = 0 ; i < previous.length ; i++) {
+				int spur = i == 0 ? source : graph.getTarget(previous[i - 1]);
+				bannedNodes.clear();
+				bannedEdges.clear();
+				for (int[] path : paths) {
+					if (path.length > i && samePrefix(path, previous, i)) {
+						bannedEdges.set(path[i]);
+					}
+				}
+				bannedNodes.set(source);
+				for (int j = 0 ; j < i ; j++) {
+					bannedNodes.set(graph.getTarget(previous[j]));
+				}
+				bannedNodes.clear(spur);
+				int[] spurPath = shortestPath(spur, target, bannedNodes, bannedEdges);
+				if (spurPath == null) {
+					continue;
+				}
+				int[] path = Arrays.copyOf(previous, i + spurPath.length);
+				System.arraycopy(spurPath, 0, path, i, spurPath.length);
+				if (seen.add(asList(path))) {
+					candidates.add(new Candidate(path, cost(path), order++));
+				}
+			}
+			Candidate next = candidates.poll();
+			if (next == null) {
+				break;
+			}
+			paths.add(next.path);
+		}
+	}
+
+	private static boolean samePrefix(int[] a, int[] b, int length) {
+		for (int i = 0 ; i < length ; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<Integer> asList(int[] path) {
+		List<Integer> list = new ArrayList<>(path.length);
+		for (int edge : path) {
+			list.add(edge);
+		}
+		return list;
+	}
+
+	private long cost(int edge) {
+		return graph.isOptional(edge) ? optionalCost : 1;
+	}
+
+	private long cost(int[] path) {
+		long cost = 0;
+		for (int edge : path) {
+			cost += cost(edge);
+		}
+		return cost;
+	}
+
+	/**
+	 * Dijkstra's algorithm, avoiding the banned nodes and edges.
+	 *
+	 * @return the edges on the cheapest path, or {@code null} if there is none
+	 */
+	private int[] shortestPath(int source, int target, BitSet bannedNodes, BitSet bannedEdges) {
+		long[] distance = new long[graph.size()];
+		Arrays.fill(distance, Long.MAX_VALUE);
+		int[] parentEdge = new int[graph.size()];
+		Arrays.fill(parentEdge, -1);
+		BitSet done = new BitSet(graph.size());
+		//Entries are the distance in the high bits and the node in the low ones, so they sort by distance
+		PriorityQueue<Long> queue = new PriorityQueue<>();
+		distance[source] = 0;
+		queue.add((long)source);
+		while (!queue.isEmpty()) {
+			long entry = queue.poll();
+			int node = (int)entry;
+			if (done.get(node)) {
+				continue;
+			}
+			done.set(node);
+			if (node == target) {
+				break;
+			}
+			for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+				int next = graph.getTarget(edge);
+				if (bannedEdges.get(edge) || bannedNodes.get(next) || done.get(next)) {
+					continue;
+				}
+				long nextDistance = distance[node] + cost(edge);
+				if (nextDistance < distance[next]) {
+					distance[next] = nextDistance;
+					parentEdge[next] = edge;
+					queue.add(nextDistance << 32 | next);
+				}
+			}
+		}
+		if (!done.get(target)) {
+			return null;
+		}
+		int length = 0;
+		for (int node = target ; node != source ; node = nodeBefore(parentEdge[node])) {
+			length++;
+		}
+		int[] path = new int[length];
+		for (int node = target ; node != source ; node = nodeBefore(parentEdge[node])) {
+			path[--length] = parentEdge[node];
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the node an edge comes from, by a binary search of the edge offsets.
+	 */
+	private int nodeBefore(int edge) {
+		int low = 0;
+		int high = graph.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (graph.firstEdge(mid) <= edge) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the paths found, shortest first. Each path starts with the {@code from} module and ends with the
+	 * {@code to} module.
+	 */
+	public List<List<ModuleIdentifier>> getPaths() {
+		List<List<ModuleIdentifier>> result = new ArrayList<>(paths.size());
+		for (int[] path : paths) {
+			List<ModuleIdentifier> modules = new ArrayList<>(path.length + 1);
+			modules.add(graph.getModule(source));
+			for (int edge : path) {
+				modules.add(graph.getModule(graph.getTarget(edge)));
+			}
+			result.add(Collections.unmodifiableList(modules));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the paths found, shortest first, as the dependencies making them up.
+	 */
+	public List<List<ModuleDependency>> getDependencyPaths() {
+		List<List<ModuleDependency>> result = new ArrayList<>(paths.size());
+		for (int[] path : paths) {
+			List<ModuleDependency> deps = new ArrayList<>(path.length);
+			for (int edge : path) {
+				deps.add(new ModuleDependency(graph.getModule(nodeBefore(edge)), graph.getModule(graph.getTarget(edge)), graph.isOptional(edge)));
+			}
+			result.add(Collections.unmodifiableList(deps));
+		}
+		return result;
+	}
+
+	private static class Candidate {
+		private final int[] path;
+		private final long cost;
+		private final int order;
+
+		Candidate(int[] path, long cost, int order) {
+			this.path = path;
+			this.cost = cost;
+			this.order = order;
+		}
+	}
+}
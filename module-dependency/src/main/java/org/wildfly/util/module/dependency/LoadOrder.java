@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * The order the modules needed by a root module can be loaded in, worked out in one pass over the components of
+ * the {@link CondensedModuleGraph} reachable from the root, so it takes time linear in the size of the graph.
+ * <p>
+ * A module without dependencies is on level {@code 0}, and every other module is one level above its highest
+ * dependency, so all the modules on a level can be loaded at the same time once the levels below are done. The
+ * modules of a dependency cycle share a level. The number of levels is the length of the longest dependency chain,
+ * and the width of each level is how many modules, counting a cycle as one, can be loaded in parallel.
+ * <p>
+ * The critical path is the chain of dependencies from the root with the highest total weight. Each module weighs
+ * one unless weights such as the sizes from {@link ModuleSpecFinder#findResourceSizes()} are given.
+ */
+public class LoadOrder {
+
+	private final CondensedModuleGraph condensed;
+	private final int rootComponent;
+	//The level of each component, -1 if the root does not need it
+	private final int[] levels;
+	private final int[] widths;
+	//The weight of the heaviest chain from each component, and the dependency the chain goes through next
+	private final long[] weights;
+	private final int[] next;
+
+	LoadOrder(ModuleGraph graph, ModuleIdentifier root, Map<ModuleIdentifier, Long> moduleWeights) {
+		this(graph.freeze(), root, moduleWeights);
+	}
+
+	/**
+	 * @param moduleWeights the weight of each module, or {@code null} for every module to weigh one. Modules without
+	 *        a weight weigh nothing.
+	 */
+	LoadOrder(FrozenModuleGraph graph, ModuleIdentifier root, Map<ModuleIdentifier, Long> moduleWeights) {
+		this.condensed = graph.getCondensedGraph();
+		this.rootComponent = condensed.getComponent(root);
+		int count = rootComponent + 1;
+		this.levels = new int[count];
+		this.weights = new long[count];
+		this.next = new int[count];
+		Arrays.fill(levels, -1);
+
+		BitSet reached = new BitSet(count);
+		if (rootComponent >= 0) {
+			reached.set(rootComponent);
+		}
+		//Dependents come before their dependencies going down, so everything the root needs gets marked
+		for (int c = rootComponent ; c >= 0 ; c--) {
+			if (reached.get(c)) {
+				for (int edge = condensed.firstEdge(c) ; edge < condensed.endEdge(c) ; edge++) {
+					reached.set(condensed.getTarget(edge));
+				}
+			}
+		}
+
+		//and dependencies come before their dependents going up
+		int levelCount = 0;
+		for (int c = reached.nextSetBit(0) ; c >= 0 ; c = reached.nextSetBit(c + 1)) {
+			int level = 0;
+			int heaviest = -1;
+			for (int edge = condensed.firstEdge(c) ; edge < condensed.endEdge(c) ; edge++) {
+				int target = condensed.getTarget(edge);
+				level = Math.max(level, levels[target] + 1);
+				if (heaviest < 0 || weights[target] > weights[heaviest]) {
+					heaviest = target;
+				}
+			}
+			levels[c] = level;
+			levelCount = Math.max(levelCount, level + 1);
+			next[c] = heaviest;
+			weights[c] = getWeight(graph, c, moduleWeights) + (heaviest < 0 ? 0 : weights[heaviest]);
+		}
+
+		this.widths = new int[levelCount];
+		for (int c = reached.nextSetBit(0) ; c >= 0 ; c = reached.nextSetBit(c + 1)) {
+			widths[levels[c]]++;
+		}
+	}
+
+	private long getWeight(FrozenModuleGraph graph, int component, Map<ModuleIdentifier, Long> moduleWeights) {
+		if (moduleWeights == null) {
+			return condensed.getComponentSize(component);
+		}
+		long weight = 0;
+		for (int i = 0 ; i < condensed.getComponentSize(component) ; i++) {
+			Long moduleWeight = moduleWeights.get(graph.getModule(condensed.getMember(component, i)));
+			if (moduleWeight != null) {
+				weight += moduleWeight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Gets the number of levels, which is {@code 0} if the root is not in the graph.
+	 */
+	public int getLevelCount() {
+		return widths.length;
+	}
+
+	/**
+	 * Gets the number of modules on a level, counting each dependency cycle as one.
+	 */
+	public int getLevelWidth(int level) {
+		return widths[level];
+	}
+
+	/**
+	 * Gets the level of a module.
+	 *
+	 * @return the level, or {@code -1} if the root does not need the module
+	 */
+	public int getLevel(ModuleIdentifier id) {
+		int component = condensed.getComponent(id);
+		return component < 0 || component > rootComponent ? -1 : levels[component];
+	}
+
+	/**
+	 * Gets the modules on each level, sorted, starting with the modules without dependencies.
+	 */
+	public List<Set<ModuleIdentifier>> getLevels() {
+		List<Set<ModuleIdentifier>> list = new ArrayList<>(widths.length);
+		for (int level = 0 ; level < widths.length ; level++) {
+			list.add(new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR));
+		}
+		for (int c = 0 ; c < levels.length ; c++) {
+			if (levels[c] >= 0) {
+				list.get(levels[c]).addAll(condensed.getModules(c));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the heaviest chain of dependencies, starting with the root. Each entry holds one module, or all the
+	 * modules of a dependency cycle.
+	 */
+	public List<Set<ModuleIdentifier>> getCriticalPath() {
+		if (rootComponent < 0) {
+			return Collections.emptyList();
+		}
+		List<Set<ModuleIdentifier>> path = new ArrayList<>();
+		for (int c = rootComponent ; c >= 0 ; c = next[c]) {
+			path.add(condensed.getModules(c));
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the total weight of the modules on the critical path.
+	 */
+	public long getCriticalPathWeight() {
+		return rootComponent < 0 ? 0 : weights[rootComponent];
+	}
+}
@@ -1,12 +1,25 @@
 package org.wildfly.util.module.dependency;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.jboss.modules.ModuleIdentifier;
 
@@ -20,25 +33,332 @@ public class Main
         String modulesDir = System.getProperty("jboss.as.modules.dir", "/Users/kabir/sourcecontrol/wildfly/git/wildfly/build/target/wildfly-9.0.0.Alpha1-SNAPSHOT/modules/system/layers/base/");
         File root = new File(modulesDir);
 
-        ModuleSpecFinder finder = ModuleSpecFinder.Factory.create(root);
+        int parallelism = Integer.getInteger("jboss.as.modules.scan.parallelism", Runtime.getRuntime().availableProcessors());
+
+        ModuleSpecFinder finder;
+        if ("streaming".equals(System.getProperty("jboss.as.modules.parser"))) {
+            finder = ModuleSpecFinder.Factory.createStreaming(root, parallelism);
+        } else {
+            finder = ModuleSpecFinder.Factory.create(root, parallelism);
+        }
+        String snapshot = System.getProperty("jboss.as.modules.snapshot");
+        if (snapshot != null) {
+            File snapshotFile = snapshot.isEmpty() || snapshot.equals("true") ? SnapshotModuleSpecFinder.getDefaultSnapshotFile(root) : new File(snapshot);
+            finder = ModuleSpecFinder.Factory.createCached(finder, snapshotFile);
+        }
         ModuleGraph graph = new ModuleGraph(finder);
 
-        Subsystems subsystems = Subsystems.create();
-        subsystemsFrom(graph, subsystems, "org.jboss.as.server");
+        //Only the modes running a task per subsystem get an executor
+        ExecutorService executor = null;
+        try {
+            String mode = args.length > 0 ? args[0] : "subsystems";
+            switch (mode) {
+                case "subsystems":
+                    Subsystems subsystems = Subsystems.create();
+                    executor = createAnalysisExecutor();
+                    subsystemsFrom(executor, graph, subsystems, "org.jboss.as.server");
+                    break;
+                case "cycles":
+                    cycles(graph);
+                    break;
+                case "nearest-subsystems":
+                    nearestSubsystems(graph, Subsystems.create());
+                    break;
+                case "dominators":
+                    dominators(graph, Subsystems.create(), args.length > 1 ? args[1] : "org.jboss.as.server");
+                    break;
+                case "impact":
+                    impact(graph, Subsystems.create(), Arrays.asList(args).subList(1, args.length));
+                    break;
+                case "provision":
+                    provision(graph, root, Arrays.asList(args).subList(1, args.length));
+                    break;
+                case "footprint":
+                    footprint(graph, finder, Subsystems.create(), args.length > 1 ? args[1] : "org.jboss.as.server");
+                    break;
+                case "unused-dependencies":
+                    unusedDependencies(graph, root, parallelism);
+                    break;
+                case "load-order":
+                    loadOrder(graph, finder, args.length > 1 ? args[1] : "org.jboss.as.server");
+                    break;
+                case "optional":
+                    optional(graph, Subsystems.create(), args.length > 1 ? args[1] : "org.jboss.as.server");
+                    break;
+                case "path-counts":
+                    executor = createAnalysisExecutor();
+                    pathCounts(executor, graph, Subsystems.create(), args.length > 1 ? args[1] : "org.jboss.as.server");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode '" + mode + "'. Use one of: subsystems, cycles, nearest-subsystems, dominators, impact, provision, footprint, unused-dependencies, load-order, optional, path-counts");
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static ExecutorService createAnalysisExecutor() {
+        int analysisParallelism = Integer.getInteger("jboss.as.modules.analysis.parallelism", Runtime.getRuntime().availableProcessors());
+        return new ForkJoinPool(analysisParallelism);
+    }
+
+    /**
+     * Runs a task for each subsystem on the executor, collecting the non-null results sorted by subsystem.
+     * The first failure, if any, is rethrown once all the tasks are done.
+     */
+    static <T> Map<ModuleIdentifier, T> forEachSubsystem(ExecutorService executor, Collection<ModuleIdentifier> subsystemIds, final SubsystemTask<T> task) throws Exception {
+        final ConcurrentMap<ModuleIdentifier, T> results = new ConcurrentSkipListMap<>(Util.MODULE_ID_COMPARATOR);
+        List<Callable<Void>> callables = new ArrayList<>(subsystemIds.size());
+        for (final ModuleIdentifier subsystemId : subsystemIds) {
+            callables.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    T result = task.run(subsystemId);
+                    if (result != null) {
+                        results.put(subsystemId, result);
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(callables)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception)e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    interface SubsystemTask<T> {
+        /**
+         * Analyses a subsystem. Called concurrently for different subsystems, so it must only read shared state.
+         *
+         * @return the result, or {@code null} to leave the subsystem out
+         */
+        T run(ModuleIdentifier subsystemId) throws Exception;
+    }
+
+    private static void cycles(final ModuleGraph graph) {
+        CondensedModuleGraph condensed = graph.getCondensedGraph();
+        List<Set<ModuleIdentifier>> cycles = condensed.getCycles();
+        System.out.println("\n\n****** Dependency cycles " + cycles.size() + " (" + condensed.getComponentCount() + " components for "
+                + graph.freeze().size() + " modules)");
+        for (Set<ModuleIdentifier> cycle : cycles) {
+            System.out.println("* " + cycle.size() + " modules\n" + format(new ArrayList<>(cycle), 5));
+        }
+    }
+
+    private static void nearestSubsystems(final ModuleGraph graph, final Subsystems subsystems) {
+        NearestSubsystems nearest = new NearestSubsystems(graph, subsystems);
+        System.out.println("\n\n****** Modules owned by a single subsystem, with their distance from it\n");
+        for (Map.Entry<ModuleIdentifier, Set<ModuleIdentifier>> entry : nearest.getModulesBySubsystem().entrySet()) {
+            System.out.println("------ " + entry.getKey() + " " + entry.getValue().size());
+            for (ModuleIdentifier module : entry.getValue()) {
+                System.out.println(module + " " + nearest.getDistance(module));
+            }
+        }
+        Map<ModuleIdentifier, Set<ModuleIdentifier>> shared = nearest.getSharedModules();
+        System.out.println("\n\n****** Modules shared between subsystems at the same distance " + shared.size() + "\n");
+        for (Map.Entry<ModuleIdentifier, Set<ModuleIdentifier>> entry : shared.entrySet()) {
+            System.out.println(entry.getKey() + " " + nearest.getDistance(entry.getKey()) + " " + entry.getValue());
+        }
+        Set<ModuleIdentifier> unowned = nearest.getUnownedModules();
+        System.out.println("\n\n****** Modules not used by any subsystem " + unowned.size() + "\n");
+        for (ModuleIdentifier module : unowned) {
+            System.out.println(module);
+        }
+    }
+
+    private static void dominators(final ModuleGraph graph, final Subsystems subsystems, final String source) {
+        final ModuleIdentifier sourceId = ModuleIdentifier.fromString(source);
+        DominatorTree tree = new DominatorTree(graph, sourceId);
+        System.out.println("\n\n****** Modules on every path from " + sourceId + " to each subsystem\n");
+        for (ModuleIdentifier subsystemId : subsystems.getNames()) {
+            List<ModuleIdentifier> dominators = tree.getDominators(subsystemId);
+            if (dominators.isEmpty()) {
+                continue;
+            }
+            System.out.println("* " + subsystemId + "\n" + format(dominators, 5));
+        }
+    }
+
+    private static void impact(final ModuleGraph graph, final Subsystems subsystems, final List<String> patched) {
+        if (patched.isEmpty()) {
+            throw new IllegalArgumentException("Give the modules to analyse the impact of patching, e.g. impact org.jboss.logging io.netty");
+        }
+        List<ModuleIdentifier> patchedIds = new ArrayList<>();
+        for (String id : patched) {
+            patchedIds.add(ModuleIdentifier.fromString(id));
+        }
+        ImpactAnalysis analysis = new ImpactAnalysis(graph, subsystems);
+        for (ImpactAnalysis.Impact impact : analysis.getImpact(patchedIds).values()) {
+            Map<ModuleIdentifier, List<ModuleIdentifier>> affectedSubsystems = impact.getAffectedSubsystems();
+            System.out.println("\n\n****** Patching " + impact.getPatchedModule() + " affects " + impact.getAffectedModules().size()
+                    + " modules and " + affectedSubsystems.size() + " subsystems\n");
+            Map<ModuleIdentifier, Set<ModuleIdentifier>> modulesBySubsystem = impact.getAffectedModulesBySubsystem();
+            for (Map.Entry<ModuleIdentifier, List<ModuleIdentifier>> entry : affectedSubsystems.entrySet()) {
+                System.out.println("* " + entry.getKey() + "\n" + format(entry.getValue(), 5));
+                Set<ModuleIdentifier> modules = modulesBySubsystem.get(entry.getKey());
+                if (!modules.isEmpty()) {
+                    System.out.println("  depends on the affected modules\n" + format(new ArrayList<>(modules), 5));
+                }
+            }
+            System.out.println("------ Affected modules no subsystem depends on");
+            for (ModuleIdentifier id : impact.getAffectedModulesWithoutSubsystem()) {
+                System.out.println(id + " " + impact.getChain(id));
+            }
+        }
+    }
+
+    private static void optional(final ModuleGraph graph, final Subsystems subsystems, final String source) {
+        final ModuleIdentifier sourceId = ModuleIdentifier.fromString(source);
+        DependencyClosure closure = new DependencyClosure(graph, sourceId);
+        Set<ModuleIdentifier> optional = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+        optional.addAll(closure.getOptionalModules());
+        System.out.println("\n\n****** " + closure.getMandatoryModules().size() + " modules reachable from " + sourceId
+                + " without optional dependencies, " + optional.size() + " only through optional dependencies\n");
+        for (ModuleIdentifier id : optional) {
+            System.out.println(id);
+        }
+        System.out.println("\n\n****** How each subsystem is reachable from " + sourceId + "\n");
+        for (ModuleIdentifier subsystemId : subsystems.getNames()) {
+            System.out.println("* " + subsystemId + " " + closure.getReachability(subsystemId) + "\n" + format(closure.pathTo(subsystemId), 5));
+        }
+    }
+
+    private static void provision(final ModuleGraph graph, final File root, final List<String> subsystems) throws Exception {
+        boolean includeOptional = Boolean.getBoolean("jboss.as.modules.provision.optional");
+        List<ModuleIdentifier> roots = new ArrayList<>();
+        roots.add(ModuleIdentifier.fromString("org.jboss.as.server"));
+        for (String id : subsystems) {
+            roots.add(ModuleIdentifier.fromString(id));
+        }
+        ProvisioningCalculator calculator = new ProvisioningCalculator(graph, root, includeOptional);
+        ProvisioningCalculator.Provisioning provisioning = calculator.calculate(roots);
+        String rootPath = root.getAbsolutePath() + File.separator;
+
+        List<File> kept = provisioning.getKeptDirectories();
+        List<File> deleted = provisioning.getDeletedDirectories();
+        System.out.println("\n\n****** Provisioning " + roots + (includeOptional ? " with" : " without") + " optional dependencies\n");
+        System.out.println("Keep " + kept.size() + " modules, " + provisioning.getKeptBytes() + " bytes");
+        System.out.println("Delete " + deleted.size() + " modules, saving " + provisioning.getDeletedBytes() + " bytes");
+        Set<ModuleIdentifier> missing = provisioning.getMissingModules();
+        if (!missing.isEmpty()) {
+            System.out.println("Missing " + missing.size() + " modules " + missing);
+        }
+        System.out.println("\n------ Keep");
+        for (File dir : kept) {
+            System.out.println(dir.getAbsolutePath().substring(rootPath.length()));
+        }
+        System.out.println("\n------ Delete");
+        for (File dir : deleted) {
+            System.out.println(dir.getAbsolutePath().substring(rootPath.length()));
+        }
+    }
+
+    private static void footprint(final ModuleGraph graph, final ModuleSpecFinder finder, final Subsystems subsystems, final String source) throws Exception {
+        final ModuleIdentifier sourceId = ModuleIdentifier.fromString(source);
+        //Same closures as the subsystems report: stop at the other subsystems, and leave out what the source needs anyway
+        Set<ModuleIdentifier> core = new DependencyPathDFS(graph, sourceId, StopCondition.before(subsystems.getNames())).getAllModules();
+        Set<ModuleIdentifier> barriers = new HashSet<>(subsystems.getNames());
+        barriers.add(sourceId);
+        SubsystemClosureMatrix matrix = new SubsystemClosureMatrix(graph.freeze(), subsystems.getNames(), barriers, core);
+        Map<ModuleIdentifier, Long> sizes = finder.findResourceSizes();
+        SubsystemFootprint footprint = new SubsystemFootprint(matrix, sizes);
+
+        long coreBytes = 0;
+        for (ModuleIdentifier id : core) {
+            Long size = sizes.get(id);
+            coreBytes += size == null ? 0 : size;
+        }
+        System.out.println("\n\n****** Resource root bytes reachable from a subsystem, stopping at a subsystem\n");
+        System.out.println(sourceId + " needs " + core.size() + " modules, " + coreBytes + " bytes, outside the subsystems");
+        System.out.println("The subsystems reach another " + footprint.getTotalBytes() + " bytes\n");
+        for (SubsystemFootprint.Footprint entry : footprint.getFootprints()) {
+            System.out.println(entry);
+        }
+    }
+
+    private static void unusedDependencies(final ModuleGraph graph, final File root, final int parallelism) throws Exception {
+        String cache = System.getProperty("jboss.as.modules.package.cache");
+        File cacheFile = cache == null || cache.isEmpty() || cache.equals("true") ? PackageIndex.getDefaultCacheFile(root) : new File(cache);
+        PackageIndex index = new PackageIndex(cacheFile);
+        UnusedDependencyDetector detector = new UnusedDependencyDetector(graph, root, index, parallelism);
+        index.store();
+
+        List<ModuleDependency> unused = detector.getUnusedDependencies();
+        System.out.println("\n\n****** Dependencies none of the module's classes refer to " + unused.size()
+                + " (" + index.getScannedCount() + " jars scanned, the rest from " + cacheFile + ")");
+        ModuleIdentifier current = null;
+        for (ModuleDependency dep : unused) {
+            if (!dep.getFromId().equals(current)) {
+                current = dep.getFromId();
+                System.out.println("------ " + current);
+            }
+            System.out.println(dep.getToId() + (dep.isOptional() ? " (optional)" : ""));
+        }
+    }
+
+    private static void loadOrder(final ModuleGraph graph, final ModuleSpecFinder finder, final String source) throws Exception {
+        final ModuleIdentifier sourceId = ModuleIdentifier.fromString(source);
+        boolean weighted = Boolean.getBoolean("jboss.as.modules.load.order.weighted");
+        LoadOrder order = new LoadOrder(graph, sourceId, weighted ? finder.findResourceSizes() : null);
+
+        List<Set<ModuleIdentifier>> levels = order.getLevels();
+        System.out.println("\n\n****** Load order levels for " + sourceId + " " + levels.size() + ", modules without dependencies first\n");
+        for (int level = 0 ; level < levels.size() ; level++) {
+            System.out.println("------ Level " + level + ", width " + order.getLevelWidth(level) + "\n" + format(new ArrayList<>(levels.get(level)), 5));
+        }
+
+        List<Set<ModuleIdentifier>> criticalPath = order.getCriticalPath();
+        System.out.println("\n\n****** Critical path from " + sourceId + " " + criticalPath.size() + " steps, weighing "
+                + order.getCriticalPathWeight() + (weighted ? " bytes" : " modules") + "\n");
+        for (Set<ModuleIdentifier> step : criticalPath) {
+            System.out.println(step.size() == 1 ? step.iterator().next() : "cycle " + step);
+        }
     }
 
-    private static void subsystemsFrom(final ModuleGraph graph, final Subsystems subsystems, final String source) {
+    private static void pathCounts(final ExecutorService executor, final ModuleGraph graph, final Subsystems subsystems, final String source) throws Exception {
+        final ModuleIdentifier sourceId = ModuleIdentifier.fromString(source);
+        System.out.println("\n\n****** Number of paths from " + sourceId + " to each subsystem, with the dependencies carrying the most paths\n");
+        Map<ModuleIdentifier, DependencyPathCounter> counters = forEachSubsystem(executor, subsystems.getNames(), new SubsystemTask<DependencyPathCounter>() {
+            @Override
+            public DependencyPathCounter run(ModuleIdentifier subsystemId) {
+                DependencyPathCounter counter = new DependencyPathCounter(graph, sourceId, subsystemId);
+                return counter.getPathCount().signum() == 0 ? null : counter;
+            }
+        });
+        for (Map.Entry<ModuleIdentifier, DependencyPathCounter> counter : counters.entrySet()) {
+            System.out.println("* " + counter.getKey() + " " + counter.getValue().getPathCount());
+            int i = 0;
+            for (Map.Entry<ModuleDependency, BigInteger> entry : counter.getValue().getEdgeCounts().entrySet()) {
+                if (i++ == 5) {
+                    break;
+                }
+                System.out.println("            " + entry.getKey() + " " + entry.getValue());
+            }
+        }
+    }
+
+    private static void subsystemsFrom(final ExecutorService executor, final ModuleGraph graph, final Subsystems subsystems, final String source) throws Exception {
     	final ModuleIdentifier sourceId = ModuleIdentifier.create(source);
         DependencyPathDFS coreModules = new DependencyPathDFS(graph, sourceId);
+        ReachabilityIndex reachability = graph.getReachabilityIndex();
 
         Set<ModuleIdentifier> nonReachable = new TreeSet<>(Util.MODULE_ID_COMPARATOR);
         Map<ModuleIdentifier, List<ModuleIdentifier>> reachable = new TreeMap<>(Util.MODULE_ID_COMPARATOR);
         for (ModuleIdentifier subsystem : subsystems.getNames()) {
-        	List<ModuleIdentifier> path = coreModules.simplePathTo(subsystem);
-        	if (path.size() == 0){
+        	if (!reachability.reaches(sourceId, subsystem)){
         		nonReachable.add(subsystem);
         	} else {
-        		reachable.put(subsystem, path);
+        		reachable.put(subsystem, coreModules.simplePathTo(subsystem));
         	}
         }
 
@@ -54,20 +374,11 @@ public class Main
 
 
         final Map<ModuleIdentifier, ModuleIdentifier> directCoreSubsystemsWithParents = new TreeMap<>(Util.MODULE_ID_COMPARATOR);
-        final DependencyPathDFS nonSubsystemCoreModulesStrict = new DependencyPathDFS(graph, sourceId, new EndSearchCondition() {
-            @Override
-            public boolean endSearch(ModuleIdentifier id, ModuleDependency dep) {
-                ModuleIdentifier depId = dep.getToId();
-                if (subsystems.getNames().contains(depId)){
-                    directCoreSubsystemsWithParents.put(depId, id);
-                    return true;
-                }
-                return false;
-            }
-        });
+        final DependencyPathDFS nonSubsystemCoreModulesStrict = new DependencyPathDFS(graph, sourceId, StopCondition.before(subsystems.getNames(), directCoreSubsystemsWithParents));
 
         final TreeSet<ModuleIdentifier> nonSubsystemCoreModulesStrictTree = new TreeSet<ModuleIdentifier>(Util.MODULE_ID_COMPARATOR);
         nonSubsystemCoreModulesStrictTree.addAll(nonSubsystemCoreModulesStrict.getAllModules());
+
         System.out.println("\n\n****** All modules reachable from server but not via subsystems (strict)" + nonSubsystemCoreModulesStrictTree.size());
         for (ModuleIdentifier id : nonSubsystemCoreModulesStrictTree){
             System.out.println(id);
@@ -81,26 +392,27 @@ public class Main
             System.out.println(entry.getKey() + " " + path);
         }
 
+        //Work out what every subsystem reaches in one pass, stopping at the other subsystems and the source and
+        //leaving out the modules reachable from the source
+        Set<ModuleIdentifier> barriers = new HashSet<>(subsystems.getNames());
+        barriers.add(sourceId);
+        SubsystemClosureMatrix matrix = new SubsystemClosureMatrix(graph.freeze(), subsystems.getNames(), barriers, nonSubsystemCoreModulesStrictTree);
         Map<ModuleIdentifier, Set<ModuleIdentifier>> subsystemsBySubsystems = new TreeMap<>(Util.MODULE_ID_COMPARATOR);
-        for (final ModuleIdentifier subsystemId : subsystems.getNames()) {
-            DependencyPathDFS dfs = new DependencyPathDFS(graph, subsystemId, new EndSearchCondition() {
-                public boolean endSearch(ModuleIdentifier id, ModuleDependency dep) {
-                    if (subsystems.getNames().contains(dep.getFromId()) && !subsystemId.equals(id)) {
-                        return true;
-                    }
-                    if (sourceId.equals(id)){
-                        return true;
-                    }
-                    if (nonSubsystemCoreModulesStrictTree.contains(dep.getToId())){
-                        return true;
-                    }
-                    return false;
-                }
-            });
-            Set<ModuleIdentifier> modules = new TreeSet<>(Util.MODULE_ID_COMPARATOR);
-            modules.addAll(dfs.getAllModules());
+        for (ModuleIdentifier subsystemId : subsystems.getNames()) {
+            Set<ModuleIdentifier> modules = matrix.getModulesReachedBy(subsystemId);
+            if (modules.isEmpty()) {
+                //A subsystem without a module only reaches itself
+                modules.add(subsystemId);
+            }
             subsystemsBySubsystems.put(subsystemId, modules);
         }
+        String csv = System.getProperty("jboss.as.modules.closure.csv");
+        if (csv != null) {
+            try (Writer writer = new FileWriter(csv)) {
+                matrix.writeCsv(writer);
+            }
+            System.out.println("\n\n****** Wrote the subsystem closure matrix to " + csv);
+        }
 
         System.out.println("\n\n****** All modules (apart from stuff reachable from server) reachable from a subsystem, stopping at a subsystem");
         for (Map.Entry<ModuleIdentifier, Set<ModuleIdentifier>> entry : subsystemsBySubsystems.entrySet()) {
@@ -119,14 +431,22 @@ public class Main
 
 
 
-//        System.out.println("\n====== All paths for subsystems reachable from " + sourceId + "\n");
-//        for (ModuleIdentifier subsystemId : reachable.keySet()) {
-//            System.out.println("----- " + subsystemId + "\n");
-//            AllDependencyPathsDFS search = new AllDependencyPathsDFS(graph, sourceId, subsystemId);
-//            for (List<ModuleIdentifier> path : search.pathsTo()) {
-//                System.out.println(format(path, 5));
-//            }
-//        }
+        final int k = Integer.getInteger("jboss.as.modules.paths.k", 5);
+        final boolean preferNonOptional = Boolean.parseBoolean(System.getProperty("jboss.as.modules.paths.prefer.non.optional", "true"));
+        System.out.println("\n====== The " + k + " shortest paths for subsystems reachable from " + sourceId
+                + (preferNonOptional ? ", preferring non-optional dependencies" : "") + "\n");
+        Map<ModuleIdentifier, List<List<ModuleDependency>>> shortestPaths = forEachSubsystem(executor, reachable.keySet(), new SubsystemTask<List<List<ModuleDependency>>>() {
+            @Override
+            public List<List<ModuleDependency>> run(ModuleIdentifier subsystemId) {
+                return new KShortestDependencyPaths(graph, sourceId, subsystemId, k, preferNonOptional).getDependencyPaths();
+            }
+        });
+        for (Map.Entry<ModuleIdentifier, List<List<ModuleDependency>>> entry : shortestPaths.entrySet()) {
+            System.out.println("----- " + entry.getKey() + "\n");
+            for (List<ModuleDependency> path : entry.getValue()) {
+                System.out.println(format(path, 3));
+            }
+        }
     }
 
 
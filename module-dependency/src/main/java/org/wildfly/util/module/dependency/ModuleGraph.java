@@ -23,56 +23,161 @@
 package org.wildfly.util.module.dependency;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.modules.ModuleIdentifier;
 import org.jboss.modules.ModuleLoadException;
 
-
+/**
+ * The dependencies between modules. It is safe for concurrent readers: the dependency sets are concurrent, and the
+ * searches run on the immutable {@link #freeze()}d form, which any number of threads may share. Adding a dependency
+ * while a search is running is allowed, but the search will not see it.
+ */
 public class ModuleGraph {
-    private Map<ModuleIdentifier, Set<ModuleDependency>> modules;
+    private final Map<ModuleIdentifier, Set<ModuleDependency>> modules = new ConcurrentHashMap<>();
+    private volatile FrozenModuleGraph frozen;
+    private volatile Map<ModuleIdentifier, Set<ModuleDependency>> dependents;
 
     ModuleGraph(ModuleSpecFinder finder) throws ModuleLoadException {
-        this.modules = new HashMap<>(finder.findAllModules());
+        addAll(finder.findAllModules());
         //System.out.println(modules);
     }
 
     ModuleGraph(Map<ModuleIdentifier, Set<ModuleDependency>> modules) {
-    	this.modules = new HashMap<>(modules);
+    	addAll(modules);
     }
 
     ModuleGraph() {
-    	this.modules = new HashMap<>();
     }
 
+    private void addAll(Map<ModuleIdentifier, Set<ModuleDependency>> modules) {
+    	for (Map.Entry<ModuleIdentifier, Set<ModuleDependency>> entry : modules.entrySet()) {
+    		Set<ModuleDependency> deps = createDependencySet();
+    		deps.addAll(entry.getValue());
+    		this.modules.put(entry.getKey(), deps);
+    	}
+    }
+
+    private static Set<ModuleDependency> createDependencySet() {
+    	return Collections.newSetFromMap(new ConcurrentHashMap<ModuleDependency, Boolean>());
+    }
+
+    /**
+     * Gets a read-only live view of the dependencies of a module.
+     */
     public Set<ModuleDependency> getDependencies(ModuleIdentifier id) {
     	Set<ModuleDependency> deps = modules.get(id);
     	if (deps != null) {
-    		return modules.get(id);
+    		return Collections.unmodifiableSet(deps);
     	}
     	return Collections.emptySet();
     }
 
-    public void addDependency(ModuleIdentifier from, ModuleDependency to) {
+    /**
+     * Adds a dependency, updating the reverse index if it has been built. This is synchronized with {@link #freeze()}
+     * so a frozen graph being built while the dependency is added is not cached.
+     */
+    public synchronized void addDependency(ModuleIdentifier from, ModuleDependency to) {
     	Set<ModuleDependency> deps = modules.get(from);
     	if (deps == null){
-    		deps = new HashSet<>();
+    		deps = createDependencySet();
     		modules.put(from, deps);
     	}
-    	deps.add(to);
+    	if (deps.add(to) && dependents != null) {
+    		addDependent(dependents, from, to);
+    	}
+    	frozen = null;
     }
 
-    public ModuleGraph reverse() {
-    	ModuleGraph reverse = new ModuleGraph();
-    	for (Map.Entry<ModuleIdentifier, Set<ModuleDependency>> entry : modules.entrySet()) {
-    		final ModuleIdentifier from = entry.getKey();
-    		for (ModuleDependency to : entry.getValue()) {
-    			reverse.addDependency(to.getToId(), new ModuleDependency(to.getToId(), from, to.isOptional()));
+    /**
+     * Gets a read-only live view of the modules depending on a module, as dependencies pointing from the module to
+     * each of them. The reverse index this uses is built on first use, and then kept up to date by
+     * {@link #addDependency(ModuleIdentifier, ModuleDependency)}.
+     */
+    public Set<ModuleDependency> getDependents(ModuleIdentifier id) {
+    	Set<ModuleDependency> deps = getDependentsIndex().get(id);
+    	if (deps != null) {
+    		return Collections.unmodifiableSet(deps);
+    	}
+    	return Collections.emptySet();
+    }
+
+    private Map<ModuleIdentifier, Set<ModuleDependency>> getDependentsIndex() {
+    	Map<ModuleIdentifier, Set<ModuleDependency>> dependents = this.dependents;
+    	if (dependents == null) {
+    		synchronized (this) {
+    			dependents = this.dependents;
+    			if (dependents == null) {
+    				dependents = new ConcurrentHashMap<>();
+    				for (Map.Entry<ModuleIdentifier, Set<ModuleDependency>> entry : modules.entrySet()) {
+    					for (ModuleDependency to : entry.getValue()) {
+    						addDependent(dependents, entry.getKey(), to);
+    					}
+    				}
+    				this.dependents = dependents;
+    			}
     		}
     	}
-    	return reverse;
+    	return dependents;
+    }
+
+    private static void addDependent(Map<ModuleIdentifier, Set<ModuleDependency>> dependents, ModuleIdentifier from, ModuleDependency to) {
+    	Set<ModuleDependency> deps = dependents.get(to.getToId());
+    	if (deps == null) {
+    		deps = createDependencySet();
+    		dependents.put(to.getToId(), deps);
+    	}
+    	deps.add(new ModuleDependency(to.getToId(), from, to.isOptional()));
+    }
+
+    /**
+     * Gets the immutable int-indexed form of this graph, which the searches run on. It is cached until the graph
+     * is next modified.
+     */
+    public FrozenModuleGraph freeze() {
+    	FrozenModuleGraph frozen = this.frozen;
+    	if (frozen == null) {
+    		synchronized (this) {
+    			frozen = this.frozen;
+    			if (frozen == null) {
+    				frozen = new FrozenModuleGraph(modules);
+    				this.frozen = frozen;
+    			}
+    		}
+    	}
+    	return frozen;
+    }
+
+    /**
+     * Gets the DAG of the strongly connected components of this graph, see {@link FrozenModuleGraph#getCondensedGraph()}.
+     */
+    public CondensedModuleGraph getCondensedGraph() {
+    	return freeze().getCondensedGraph();
+    }
+
+    /**
+     * Gets the transitive closure index of this graph, see {@link FrozenModuleGraph#getReachabilityIndex()}.
+     */
+    public ReachabilityIndex getReachabilityIndex() {
+    	return freeze().getReachabilityIndex();
+    }
+
+    /**
+     * Gets a shortest dependency path from one module to another, see
+     * {@link DependencyPathBFS#shortestPath(FrozenModuleGraph, ModuleIdentifier, ModuleIdentifier)}.
+     */
+    public List<ModuleIdentifier> shortestPath(ModuleIdentifier from, ModuleIdentifier to) {
+    	return DependencyPathBFS.shortestPath(freeze(), from, to);
+    }
+
+    /**
+     * Gets a copy of this graph with every dependency pointing the other way. It is copied from the cached reverse
+     * index, see {@link #getDependents(ModuleIdentifier)}, which is usually all that is needed.
+     */
+    public ModuleGraph reverse() {
+    	return new ModuleGraph(getDependentsIndex());
     }
 }
@@ -23,16 +23,10 @@
 package org.wildfly.util.module.dependency;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
-import org.jboss.modules.ConcreteModuleSpec;
-import org.jboss.modules.DependencySpec;
 import org.jboss.modules.LocalModuleFinder;
-import org.jboss.modules.ModuleDependencySpec;
 import org.jboss.modules.ModuleFinder;
 import org.jboss.modules.ModuleIdentifier;
 import org.jboss.modules.ModuleLoadException;
@@ -47,22 +41,31 @@ public interface ModuleSpecFinder {
 
     Set<ModuleDependency> getModuleDependencies(ModuleSpec moduleSpec) throws ModuleLoadException;
 
+    /**
+     * Gets the number of bytes taken up by the resource roots listed in the {@code module.xml} of every module found
+     * by {@link #findAllModules()}. Jars are sized from their file attributes without being opened, and directories
+     * by adding up the files under them. Resource roots which do not exist count as nothing. The sizes are worked
+     * out on first use.
+     */
+    Map<ModuleIdentifier, Long> findResourceSizes() throws ModuleLoadException;
+
     static class Factory {
-    	private static final String MODULE_XML = "module.xml";
 
     	public static ModuleSpecFinder create(final File root) throws Exception {
-            if (!root.exists()){
-                throw new IllegalArgumentException(root.getAbsolutePath() + " does not exist");
-            }
-            if (!root.isDirectory()){
-                throw new IllegalArgumentException(root.getAbsolutePath() + " is not a directory");
-            }
+    		return create(root, 1);
+    	}
+
+    	/**
+    	 * Creates a finder which uses jboss-modules to load the module specs.
+    	 *
+    	 * @param root the modules root
+    	 * @param parallelism the number of threads to scan the modules root with
+    	 * @return the finder
+    	 */
+    	public static ModuleSpecFinder create(final File root, final int parallelism) throws Exception {
             final LocalModuleFinder finder = new LocalModuleFinder(new File[]{root});
             final ModuleLoader moduleLoader = new ModuleLoader(new ModuleFinder[]{finder});
-            return new ModuleSpecFinder() {
-
-            	Map<ModuleIdentifier, Set<ModuleDependency>> modules;
-
+            return new AbstractModuleSpecFinder(root, parallelism) {
 				@Override
 				public ModuleSpec findModule(ModuleIdentifier moduleId) throws ModuleLoadException {
 					ModuleSpec spec = finder.findModule(moduleId, moduleLoader);
@@ -71,72 +74,49 @@ public interface ModuleSpecFinder {
 					}
 					return spec;
 				}
+            };
+        }
 
+    	/**
+    	 * Creates a finder which reads the module dependencies straight from each {@code module.xml} with a streaming
+    	 * parser, rather than having jboss-modules load the full module spec. Specs returned by
+    	 * {@link ModuleSpecFinder#findModule(ModuleIdentifier)} only contain the module dependencies.
+    	 *
+    	 * @param root the modules root
+    	 * @param parallelism the number of threads to scan the modules root with
+    	 * @return the finder
+    	 */
+    	public static ModuleSpecFinder createStreaming(final File root, final int parallelism) {
+    		return new AbstractModuleSpecFinder(root, parallelism) {
 				@Override
-				public Map<ModuleIdentifier, Set<ModuleDependency>> findAllModules() throws ModuleLoadException {
-					if (this.modules != null){
-						return this.modules;
+				public ModuleSpec findModule(ModuleIdentifier moduleId) throws ModuleLoadException {
+					File moduleXml = new File(new File(root, moduleId.getName().replace('.', File.separatorChar)), moduleId.getSlot() + File.separator + MODULE_XML);
+					if (!moduleXml.exists()) {
+						throw new ModuleLoadException("Could not find" + moduleId);
 					}
-
-					this.modules = new HashMap<ModuleIdentifier, Set<ModuleDependency>>();
-					addModules(root, modules);
-					return modules;
+					return ModuleXmlParser.parseModuleSpec(moduleId, moduleXml);
 				}
 
-
 				@Override
-				public Set<ModuleDependency> getModuleDependencies(ModuleSpec moduleSpec) throws ModuleLoadException {
-					Set<ModuleDependency> deps = new HashSet<>();
-					if (moduleSpec instanceof ConcreteModuleSpec){
-						for (DependencySpec dep : ((ConcreteModuleSpec)moduleSpec).getDependencies()){
-							if (dep instanceof ModuleDependencySpec){
-								ModuleDependencySpec depSpec = (ModuleDependencySpec)dep;
-								deps.add(new ModuleDependency(((ConcreteModuleSpec)moduleSpec).getModuleIdentifier(), depSpec.getIdentifier(), depSpec.isOptional()));
-							}
-						}
-					}
-					return deps;
+				Set<ModuleDependency> loadDependencies(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+					return ModuleXmlParser.parseDependencies(identifier, moduleXml);
 				}
-
-			    private void addModules(File dir, Map<ModuleIdentifier, Set<ModuleDependency>> modules) throws ModuleLoadException {
-			        for (File file : dir.listFiles()){
-			            if (file.isDirectory()){
-			                addModules(file, modules);
-			            } else if (file.getName().equals(MODULE_XML)){
-			            	ModuleIdentifier identifier = createModuleIdentifier(file);
-			            	//System.out.println(identifier);
-			            	ModuleSpec moduleSpec = findModule(identifier);
-			            	Set<ModuleDependency> dependencies = getModuleDependencies(moduleSpec);
-			            	modules.put(identifier, dependencies);
-			            }
-			        }
-			    }
-
-			    private ModuleIdentifier createModuleIdentifier(File moduleXml){
-			    	File current = moduleXml.getParentFile();
-			    	String slot = current.getName();
-			    	current = current.getParentFile();
-			    	Stack<String> nameStack = new Stack<String>();
-			    	while (!current.equals(root)){
-			    		nameStack.push(current.getName());
-			    		current = current.getParentFile();
-			    	}
-
-			    	StringBuilder sb = new StringBuilder();
-			    	boolean first = true;
-			    	while (nameStack.size() > 0){
-
-			    		if (first){
-			    			first = false;
-			    		} else {
-			    			sb.append(".");
-			    		}
-			    		sb.append(nameStack.pop());
-			    	}
-			    	return ModuleIdentifier.create(sb.toString(), slot);
-			    }
-
-            };
-        }
+    		};
+    	}
+
+    	/**
+    	 * Wraps a finder created by this factory so that the scanned modules are kept in a snapshot file. Subsequent
+    	 * scans only parse the {@code module.xml} files which were added or changed since the snapshot was written.
+    	 *
+    	 * @param finder a finder created by this factory
+    	 * @param snapshot the snapshot file
+    	 * @return the finder
+    	 */
+    	public static ModuleSpecFinder createCached(final ModuleSpecFinder finder, final File snapshot) {
+    		if (!(finder instanceof AbstractModuleSpecFinder)) {
+    			throw new IllegalArgumentException(finder + " was not created by " + Factory.class.getName());
+    		}
+    		return new SnapshotModuleSpecFinder((AbstractModuleSpecFinder)finder, snapshot);
+    	}
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jboss.modules.DependencySpec;
+import org.jboss.modules.ModuleIdentifier;
+import org.jboss.modules.ModuleLoadException;
+import org.jboss.modules.ModuleSpec;
+
+/**
+ * Streaming parser for {@code module.xml} which only reads the module name and slot, the module dependencies and,
+ * when asked for, the paths of the resource roots. Everything else, such as properties and permissions, is skipped
+ * over without being materialised.
+ */
+final class ModuleXmlParser {
+
+	private static final String DEFAULT_SLOT = "main";
+
+	private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+			return factory;
+		}
+	};
+
+	private ModuleXmlParser() {
+	}
+
+	/**
+	 * Reads the module dependencies from a {@code module.xml}. A module alias has no dependencies.
+	 *
+	 * @param identifier the expected identifier of the module
+	 * @param moduleXml the {@code module.xml}
+	 * @return the dependencies
+	 */
+	static Set<ModuleDependency> parseDependencies(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+		Set<ModuleDependency> deps = new HashSet<>();
+		parse(identifier, moduleXml, deps, null);
+		return deps;
+	}
+
+	/**
+	 * Reads the paths of the resource roots from a {@code module.xml}, as given in the file, i.e. relative to the
+	 * directory holding it. Maven artifacts are not included, and a module alias has no resource roots.
+	 *
+	 * @param identifier the expected identifier of the module
+	 * @param moduleXml the {@code module.xml}
+	 * @return the paths
+	 */
+	static List<String> parseResourceRoots(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+		List<String> resourceRoots = new ArrayList<>();
+		parse(identifier, moduleXml, new HashSet<ModuleDependency>(), resourceRoots);
+		return resourceRoots;
+	}
+
+	/**
+	 * Creates a module spec from a {@code module.xml}. The spec only contains the module dependencies, or the alias
+	 * target if the file declares a module alias.
+	 *
+	 * @param identifier the expected identifier of the module
+	 * @param moduleXml the {@code module.xml}
+	 * @return the module spec
+	 */
+	static ModuleSpec parseModuleSpec(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+		Set<ModuleDependency> deps = new HashSet<>();
+		ModuleIdentifier aliasTarget = parse(identifier, moduleXml, deps, null);
+		if (aliasTarget != null) {
+			return ModuleSpec.buildAlias(identifier, aliasTarget).create();
+		}
+		ModuleSpec.Builder builder = ModuleSpec.build(identifier);
+		for (ModuleDependency dep : deps) {
+			builder.addDependency(DependencySpec.createModuleDependencySpec(dep.getToId(), false, dep.isOptional()));
+		}
+		return builder.create();
+	}
+
+	/**
+	 * Parses the file, adding the module dependencies to {@code deps}.
+	 *
+	 * @param resourceRoots where to add the paths of the resource roots, or {@code null} to skip them
+	 * @return the target if the file declares a module alias, {@code null} otherwise
+	 */
+	private static ModuleIdentifier parse(ModuleIdentifier identifier, File moduleXml, Set<ModuleDependency> deps, List<String> resourceRoots) throws ModuleLoadException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(moduleXml))) {
+			XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+			try {
+				reader.nextTag();
+				String element = reader.getLocalName();
+				checkIdentifier(identifier, reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "slot"), moduleXml);
+				switch (element) {
+					case "module":
+						parseModule(identifier, reader, deps, resourceRoots);
+						return null;
+					case "module-alias":
+						return ModuleIdentifier.create(
+								required(reader, "target-name", moduleXml),
+								slot(reader.getAttributeValue(null, "target-slot")));
+					case "module-absent":
+						throw new ModuleLoadException("Module " + identifier + " is declared absent in " + moduleXml);
+					default:
+						throw new ModuleLoadException("Unexpected element <" + element + "> in " + moduleXml);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			throw new ModuleLoadException("Could not parse " + moduleXml, e);
+		}
+	}
+
+	private static void parseModule(ModuleIdentifier identifier, XMLStreamReader reader, Set<ModuleDependency> deps, List<String> resourceRoots) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (reader.getLocalName().equals("dependencies")) {
+				parseDependencies(identifier, reader, deps);
+			} else if (resourceRoots != null && reader.getLocalName().equals("resources")) {
+				parseResources(reader, resourceRoots);
+			} else {
+				skip(reader);
+			}
+		}
+	}
+
+	private static void parseDependencies(ModuleIdentifier identifier, XMLStreamReader reader, Set<ModuleDependency> deps) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (reader.getLocalName().equals("module")) {
+				String name = reader.getAttributeValue(null, "name");
+				String slot = slot(reader.getAttributeValue(null, "slot"));
+				boolean optional = Boolean.parseBoolean(reader.getAttributeValue(null, "optional"));
+				deps.add(new ModuleDependency(identifier, ModuleIdentifier.create(name, slot), optional));
+			}
+			skip(reader);
+		}
+	}
+
+	private static void parseResources(XMLStreamReader reader, List<String> resourceRoots) throws XMLStreamException {
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if (reader.getLocalName().equals("resource-root")) {
+				String path = reader.getAttributeValue(null, "path");
+				if (path != null) {
+					resourceRoots.add(path);
+				}
+			}
+			skip(reader);
+		}
+	}
+
+	/**
+	 * Moves the reader from a start element to its matching end element.
+	 */
+	private static void skip(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static void checkIdentifier(ModuleIdentifier identifier, String name, String slot, File moduleXml) throws ModuleLoadException {
+		if (!identifier.getName().equals(name) || !identifier.getSlot().equals(slot(slot))) {
+			throw new ModuleLoadException("Expected module " + identifier + " in " + moduleXml + " but found " + name + ":" + slot(slot));
+		}
+	}
+
+	private static String required(XMLStreamReader reader, String attribute, File moduleXml) throws ModuleLoadException {
+		String value = reader.getAttributeValue(null, attribute);
+		if (value == null) {
+			throw new ModuleLoadException("Missing attribute '" + attribute + "' in " + moduleXml);
+		}
+		return value;
+	}
+
+	private static String slot(String slot) {
+		return slot == null ? DEFAULT_SLOT : slot;
+	}
+}
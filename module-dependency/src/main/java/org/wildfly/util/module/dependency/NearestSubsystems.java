@@ -22,6 +22,160 @@
 
 package org.wildfly.util.module.dependency;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Attributes each module to the subsystem(s) nearest to it, using one breadth first search started from all the
+ * subsystems at once. A module reached at the same distance from more than one subsystem is shared between them,
+ * and a subsystem is always the only owner of itself, at distance zero.
+ * <p>
+ * The search follows the dependencies, so a module is owned by the nearest subsystems depending on it. Pass a
+ * {@link FrozenModuleGraph#reverse()}d graph to attribute modules to the nearest subsystems they depend on instead.
+ */
 public class NearestSubsystems {
 
+	private final FrozenModuleGraph graph;
+	private final ModuleIdentifier[] subsystemIds;
+	private final int[] distance;
+	private final BitSet[] nearest;
+
+	NearestSubsystems(ModuleGraph graph, Subsystems subsystems) {
+		this(graph.freeze(), subsystems.getNames());
+	}
+
+	NearestSubsystems(FrozenModuleGraph graph, Collection<ModuleIdentifier> subsystems) {
+		this.graph = graph;
+		Set<ModuleIdentifier> sorted = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (ModuleIdentifier id : subsystems) {
+			if (graph.indexOf(id) >= 0) {
+				sorted.add(id);
+			}
+		}
+		this.subsystemIds = sorted.toArray(new ModuleIdentifier[sorted.size()]);
+		this.distance = new int[graph.size()];
+		this.nearest = new BitSet[graph.size()];
+
+		int[] queue = new int[graph.size()];
+		int head = 0;
+		int tail = 0;
+		Arrays.fill(distance, -1);
+		for (int i = 0 ; i < subsystemIds.length ; i++) {
+			int node = graph.indexOf(subsystemIds[i]);
+			distance[node] = 0;
+			nearest[node] = new BitSet(subsystemIds.length);
+			nearest[node].set(i);
+			queue[tail++] = node;
+		}
+		//All the nodes at one distance are dequeued before any of those at the next, so the owners of a node
+		//are complete by the time it is dequeued
+		while (head < tail) {
+			int node = queue[head++];
+			for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+				int target = graph.getTarget(edge);
+				if (distance[target] < 0) {
+					distance[target] = distance[node] + 1;
+					nearest[target] = (BitSet)nearest[node].clone();
+					queue[tail++] = target;
+				} else if (distance[target] == distance[node] + 1) {
+					nearest[target].or(nearest[node]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the subsystems nearest to a module.
+	 *
+	 * @return the subsystems, or an empty set if the module is not reached from any subsystem
+	 */
+	public Set<ModuleIdentifier> getNearestSubsystems(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0 || nearest[node] == null) {
+			return Collections.emptySet();
+		}
+		return getSubsystems(nearest[node]);
+	}
+
+	/**
+	 * Gets the number of dependencies between a module and its nearest subsystems.
+	 *
+	 * @return the distance, or {@code -1} if the module is not reached from any subsystem
+	 */
+	public int getDistance(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		return node < 0 ? -1 : distance[node];
+	}
+
+	/**
+	 * Whether a module is at the same distance from more than one subsystem.
+	 */
+	public boolean isShared(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		return node >= 0 && nearest[node] != null && nearest[node].cardinality() > 1;
+	}
+
+	/**
+	 * Gets the modules owned by a single subsystem, keyed by that subsystem. Each subsystem owns at least itself.
+	 */
+	public Map<ModuleIdentifier, Set<ModuleIdentifier>> getModulesBySubsystem() {
+		List<Set<ModuleIdentifier>> owned = new ArrayList<>(subsystemIds.length);
+		for (int i = 0 ; i < subsystemIds.length ; i++) {
+			owned.add(new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR));
+		}
+		for (int node = 0 ; node < nearest.length ; node++) {
+			if (nearest[node] != null && nearest[node].cardinality() == 1) {
+				owned.get(nearest[node].nextSetBit(0)).add(graph.getModule(node));
+			}
+		}
+		Map<ModuleIdentifier, Set<ModuleIdentifier>> modules = new TreeMap<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int i = 0 ; i < subsystemIds.length ; i++) {
+			modules.put(subsystemIds[i], owned.get(i));
+		}
+		return modules;
+	}
+
+	/**
+	 * Gets the modules shared between subsystems, with the subsystems sharing each.
+	 */
+	public Map<ModuleIdentifier, Set<ModuleIdentifier>> getSharedModules() {
+		Map<ModuleIdentifier, Set<ModuleIdentifier>> shared = new TreeMap<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int node = 0 ; node < nearest.length ; node++) {
+			if (nearest[node] != null && nearest[node].cardinality() > 1) {
+				shared.put(graph.getModule(node), getSubsystems(nearest[node]));
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * Gets the modules which are not reached from any subsystem.
+	 */
+	public Set<ModuleIdentifier> getUnownedModules() {
+		Set<ModuleIdentifier> unowned = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int node = 0 ; node < nearest.length ; node++) {
+			if (nearest[node] == null) {
+				unowned.add(graph.getModule(node));
+			}
+		}
+		return unowned;
+	}
+
+	private Set<ModuleIdentifier> getSubsystems(BitSet subsystems) {
+		Set<ModuleIdentifier> ids = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int i = subsystems.nextSetBit(0) ; i >= 0 ; i = subsystems.nextSetBit(i + 1)) {
+			ids.add(subsystemIds[i]);
+		}
+		return ids;
+	}
 }
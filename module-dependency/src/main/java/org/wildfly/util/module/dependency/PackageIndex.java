@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Indexes the packages in a resource root, and the packages its classes refer to, see {@link ClassReferenceReader}.
+ * Jars can be kept in a cache file, recording the size and last modified time of each jar, so that only the jars
+ * which have been added or changed since the cache was written get scanned again. Directories are always scanned.
+ * It is safe to index from several threads at once.
+ */
+class PackageIndex {
+
+	private static final int MAGIC = 0x574d5049;
+	private static final int VERSION = 1;
+	private static final String CLASS_SUFFIX = ".class";
+	private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+	private final File cacheFile;
+	private final Map<String, Entry> cached;
+	private final Map<String, Entry> current = new ConcurrentHashMap<>();
+	private final AtomicInteger scanned = new AtomicInteger();
+	private volatile boolean changed;
+
+	/**
+	 * @param cacheFile the cache file, or {@code null} to scan every jar
+	 */
+	PackageIndex(File cacheFile) {
+		this.cacheFile = cacheFile;
+		Map<String, Entry> cached = cacheFile == null ? null : readCache();
+		this.cached = cached == null ? Collections.<String, Entry>emptyMap() : cached;
+		this.changed = cached == null;
+	}
+
+	/**
+	 * Gets the default cache file for a modules root, which lives next to the snapshot, see
+	 * {@link SnapshotModuleSpecFinder#getDefaultSnapshotFile(File)}.
+	 *
+	 * @param root the modules root
+	 * @return the cache file
+	 */
+	static File getDefaultCacheFile(File root) {
+		File snapshot = SnapshotModuleSpecFinder.getDefaultSnapshotFile(root);
+		String name = snapshot.getName();
+		return new File(snapshot.getParentFile(), name.substring(0, name.lastIndexOf('.')) + ".packages");
+	}
+
+	/**
+	 * Indexes a resource root.
+	 *
+	 * @param resourceRoot a jar or a directory of classes
+	 * @return the packages, or {@code null} if the resource root does not exist
+	 */
+	Packages index(Path resourceRoot) throws IOException {
+		if (!Files.exists(resourceRoot)) {
+			return null;
+		}
+		BasicFileAttributes attributes = Files.readAttributes(resourceRoot, BasicFileAttributes.class);
+		if (attributes.isDirectory()) {
+			return scanDirectory(resourceRoot);
+		}
+		String key = resourceRoot.toAbsolutePath().toString();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		Entry entry = cached.get(key);
+		if (entry == null || entry.size != attributes.size() || entry.lastModified != lastModified) {
+			entry = new Entry(attributes.size(), lastModified, scanJar(resourceRoot));
+			scanned.incrementAndGet();
+			changed = true;
+		}
+		current.put(key, entry);
+		return entry.packages;
+	}
+
+	/**
+	 * Gets the number of jars which were not in the cache, or had changed, and so have been scanned.
+	 */
+	int getScannedCount() {
+		return scanned.get();
+	}
+
+	private static Packages scanJar(Path jar) throws IOException {
+		Packages packages = new Packages();
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (Enumeration<? extends ZipEntry> entries = zip.entries() ; entries.hasMoreElements() ; ) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (!entry.isDirectory() && name.endsWith(CLASS_SUFFIX)) {
+					try (InputStream in = new BufferedInputStream(zip.getInputStream(entry))) {
+						packages.addClass(name, in);
+					}
+				}
+			}
+		}
+		return packages;
+	}
+
+	private static Packages scanDirectory(final Path dir) throws IOException {
+		final Packages packages = new Packages();
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+					try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+						packages.addClass(dir.relativize(file).toString().replace(File.separatorChar, '/'), in);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return packages;
+	}
+
+	/**
+	 * Writes the jars indexed since this was created to the cache file, if any of them were scanned. Jars which were
+	 * in the cache but have not been indexed are dropped.
+	 */
+	void store() throws IOException {
+		if (cacheFile == null || (!changed && current.size() == cached.size())) {
+			return;
+		}
+		File dir = cacheFile.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Could not create " + dir);
+		}
+		File tmp = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(current.size());
+			for (Map.Entry<String, Entry> mapEntry : current.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				out.writeUTF(mapEntry.getKey());
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				writeStrings(out, entry.packages.packages);
+				writeStrings(out, entry.packages.references);
+			}
+		}
+		Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+	}
+
+	/**
+	 * Reads the cache file.
+	 *
+	 * @return the entries keyed by the absolute path of the jar, or {@code null} if there is no usable cache
+	 */
+	private Map<String, Entry> readCache() {
+		if (!cacheFile.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			int count = in.readInt();
+			Map<String, Entry> entries = new HashMap<>(count * 2);
+			for (int i = 0 ; i < count ; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				Packages packages = new Packages();
+				readStrings(in, packages.packages);
+				readStrings(in, packages.references);
+				entries.put(path, new Entry(size, lastModified, packages));
+			}
+			return entries;
+		} catch (IOException e) {
+			//Corrupt or from an older version, scan everything and overwrite it
+			return null;
+		}
+	}
+
+	private static void readStrings(DataInputStream in, Set<String> strings) throws IOException {
+		int count = in.readInt();
+		for (int i = 0 ; i < count ; i++) {
+			strings.add(in.readUTF());
+		}
+	}
+
+	/**
+	 * The packages holding the classes of a resource root, and the packages those classes refer to.
+	 */
+	static class Packages {
+		private final Set<String> packages = new HashSet<>();
+		private final Set<String> references = new HashSet<>();
+
+		private void addClass(String path, InputStream in) throws IOException {
+			if (path.startsWith(VERSIONS_PREFIX)) {
+				//Multi-release jar, strip the META-INF/versions/<n>/ prefix
+				int slash = path.indexOf('/', VERSIONS_PREFIX.length());
+				if (slash < 0) {
+					return;
+				}
+				path = path.substring(slash + 1);
+			}
+			String pkg = ClassReferenceReader.getPackage(path);
+			if (pkg == null || path.endsWith("module-info.class")) {
+				return;
+			}
+			packages.add(pkg);
+			ClassReferenceReader.addReferencedPackages(in, references);
+		}
+
+		/**
+		 * Gets the packages holding classes.
+		 */
+		Set<String> getPackages() {
+			return Collections.unmodifiableSet(packages);
+		}
+
+		/**
+		 * Gets the packages the classes refer to, including their own.
+		 */
+		Set<String> getReferences() {
+			return Collections.unmodifiableSet(references);
+		}
+	}
+
+	private static class Entry {
+		final long size;
+		final long lastModified;
+		final Packages packages;
+
+		Entry(long size, long lastModified, Packages packages) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.packages = packages;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Works out which modules a trimmed server needs: the union of the closures of a chosen set of modules, normally some
+ * subsystems and {@code org.jboss.as.server}. Everything else in the modules root can be deleted.
+ * <p>
+ * The closure of every module is computed once up front, as is the size on disk of every module directory, so each
+ * {@link #calculate(Collection)} call only combines bit sets and can be repeated cheaply for many combinations.
+ */
+public class ProvisioningCalculator {
+
+	private final FrozenModuleGraph graph;
+	private final File modulesRoot;
+	private final ReachabilityIndex closures;
+	//The bytes in each module's directory, or -1 if the module has no directory
+	private final long[] sizes;
+
+	ProvisioningCalculator(ModuleGraph graph, File modulesRoot, boolean includeOptional) throws IOException {
+		this(graph.freeze(), modulesRoot, includeOptional);
+	}
+
+	/**
+	 * @param modulesRoot the modules root the graph was read from
+	 * @param includeOptional whether to follow optional dependencies too
+	 */
+	ProvisioningCalculator(FrozenModuleGraph graph, File modulesRoot, boolean includeOptional) throws IOException {
+		this.graph = graph;
+		this.modulesRoot = modulesRoot;
+		this.closures = (includeOptional ? graph : graph.withoutOptionalDependencies()).getReachabilityIndex();
+		this.sizes = new long[graph.size()];
+		for (int node = 0 ; node < graph.size() ; node++) {
+			File dir = AbstractModuleSpecFinder.getModuleDirectory(modulesRoot, graph.getModule(node));
+			sizes[node] = dir.isDirectory() ? Util.sizeOf(dir.toPath()) : -1;
+		}
+	}
+
+	/**
+	 * Gets the nodes needed by a set of modules. Modules which are not in the graph are ignored.
+	 */
+	BitSet closureOf(Collection<ModuleIdentifier> roots) {
+		BitSet closure = new BitSet(graph.size());
+		for (ModuleIdentifier id : roots) {
+			int node = graph.indexOf(id);
+			if (node >= 0) {
+				closure.or(closures.closureOf(node));
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * Works out the modules to keep and delete for a set of modules.
+	 */
+	public Provisioning calculate(Collection<ModuleIdentifier> roots) {
+		return new Provisioning(closureOf(roots));
+	}
+
+	/**
+	 * The modules to keep and delete for a set of modules. Only modules with a directory are kept or deleted, the
+	 * ones which are needed but have no directory are reported as missing.
+	 */
+	public class Provisioning {
+		private final BitSet kept;
+
+		private Provisioning(BitSet kept) {
+			this.kept = kept;
+		}
+
+		public Set<ModuleIdentifier> getKeptModules() {
+			return getModules(kept, true);
+		}
+
+		public Set<ModuleIdentifier> getDeletedModules() {
+			BitSet deleted = new BitSet(graph.size());
+			deleted.set(0, graph.size());
+			deleted.andNot(kept);
+			return getModules(deleted, true);
+		}
+
+		/**
+		 * Gets the modules which are needed, but have no directory in the modules root.
+		 */
+		public Set<ModuleIdentifier> getMissingModules() {
+			return getModules(kept, false);
+		}
+
+		public List<File> getKeptDirectories() {
+			return getDirectories(getKeptModules());
+		}
+
+		public List<File> getDeletedDirectories() {
+			return getDirectories(getDeletedModules());
+		}
+
+		public long getKeptBytes() {
+			return sizeOf(kept);
+		}
+
+		/**
+		 * Gets the number of bytes saved by deleting the modules which are not needed.
+		 */
+		public long getDeletedBytes() {
+			long total = 0;
+			for (long size : sizes) {
+				if (size > 0) {
+					total += size;
+				}
+			}
+			return total - getKeptBytes();
+		}
+
+		private long sizeOf(BitSet nodes) {
+			long total = 0;
+			for (int node = nodes.nextSetBit(0) ; node >= 0 ; node = nodes.nextSetBit(node + 1)) {
+				if (sizes[node] > 0) {
+					total += sizes[node];
+				}
+			}
+			return total;
+		}
+
+		private Set<ModuleIdentifier> getModules(BitSet nodes, boolean onDisk) {
+			Set<ModuleIdentifier> modules = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+			for (int node = nodes.nextSetBit(0) ; node >= 0 ; node = nodes.nextSetBit(node + 1)) {
+				if ((sizes[node] >= 0) == onDisk) {
+					modules.add(graph.getModule(node));
+				}
+			}
+			return modules;
+		}
+
+		private List<File> getDirectories(Set<ModuleIdentifier> modules) {
+			List<File> dirs = new ArrayList<>(modules.size());
+			for (ModuleIdentifier id : modules) {
+				dirs.add(AbstractModuleSpecFinder.getModuleDirectory(modulesRoot, id));
+			}
+			return Collections.unmodifiableList(dirs);
+		}
+	}
+}
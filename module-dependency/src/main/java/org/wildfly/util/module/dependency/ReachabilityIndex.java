@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Set;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Transitive closure of a {@link FrozenModuleGraph}. The set of nodes reachable from each strongly connected
+ * component is computed once, in reverse topological order over the {@link CondensedModuleGraph}. A module always
+ * reaches itself.
+ */
+public class ReachabilityIndex {
+
+	private final FrozenModuleGraph graph;
+	private final CondensedModuleGraph components;
+	private final BitSet[] closures;
+
+	ReachabilityIndex(CondensedModuleGraph components) {
+		this.graph = components.getModuleGraph();
+		this.components = components;
+		this.closures = new BitSet[components.getComponentCount()];
+		//Components only have edges to components with a lower number, so those have been computed already
+		for (int c = 0 ; c < closures.length ; c++) {
+			BitSet closure = new BitSet(graph.size());
+			for (int i = 0 ; i < components.getComponentSize(c) ; i++) {
+				closure.set(components.getMember(c, i));
+			}
+			for (int edge = components.firstEdge(c) ; edge < components.endEdge(c) ; edge++) {
+				closure.or(closures[components.getTarget(edge)]);
+			}
+			closures[c] = closure;
+		}
+	}
+
+	public boolean reaches(ModuleIdentifier from, ModuleIdentifier to) {
+		int fromNode = graph.indexOf(from);
+		int toNode = graph.indexOf(to);
+		if (fromNode < 0 || toNode < 0) {
+			return from.equals(to);
+		}
+		return reaches(fromNode, toNode);
+	}
+
+	boolean reaches(int from, int to) {
+		return closures[components.getComponent(from)].get(to);
+	}
+
+	/**
+	 * Gets all the modules reachable from a module, including the module itself.
+	 */
+	public Set<ModuleIdentifier> closureOf(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0) {
+			return Collections.singleton(id);
+		}
+		return graph.getModules(closures[components.getComponent(node)]);
+	}
+
+	/**
+	 * Gets a copy of the nodes reachable from a node, including the node itself.
+	 */
+	BitSet closureOf(int node) {
+		return (BitSet)closures[components.getComponent(node)].clone();
+	}
+}
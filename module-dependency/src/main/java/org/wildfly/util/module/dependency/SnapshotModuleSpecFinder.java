@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.modules.ModuleIdentifier;
+import org.jboss.modules.ModuleLoadException;
+import org.jboss.modules.ModuleSpec;
+
+/**
+ * Keeps the scanned modules in a snapshot file, recording the size and last modified time of each {@code module.xml}.
+ * On the next scan only the {@code module.xml} files which have been added or changed since the snapshot was
+ * written get parsed, the dependencies of the rest are read from the snapshot. Modules which have been removed are
+ * dropped.
+ */
+class SnapshotModuleSpecFinder implements ModuleSpecFinder {
+
+	private static final int MAGIC = 0x574d4753;
+	private static final int VERSION = 1;
+
+	private final AbstractModuleSpecFinder delegate;
+	private final File snapshot;
+	private volatile Map<ModuleIdentifier, Set<ModuleDependency>> modules;
+	private volatile Map<ModuleIdentifier, Long> resourceSizes;
+
+	SnapshotModuleSpecFinder(AbstractModuleSpecFinder delegate, File snapshot) {
+		this.delegate = delegate;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Gets the default snapshot file for a modules root, which lives in the user's cache directory.
+	 *
+	 * @param root the modules root
+	 * @return the snapshot file
+	 */
+	static File getDefaultSnapshotFile(File root) {
+		File cacheDir = new File(System.getProperty("user.home"), ".cache" + File.separator + "wildfly-utils");
+		String path = root.getAbsolutePath();
+		return new File(cacheDir, root.getName() + "-" + Integer.toHexString(path.hashCode()) + ".snapshot");
+	}
+
+	@Override
+	public Map<ModuleIdentifier, Set<ModuleDependency>> findAllModules() throws ModuleLoadException {
+		if (this.modules != null){
+			return this.modules;
+		}
+
+		Map<String, Entry> current = new HashMap<>();
+		stat(delegate.root, "", current);
+
+		Map<String, Entry> previous = readSnapshot();
+		boolean changed = previous == null || previous.size() != current.size();
+		if (previous == null) {
+			Map<ModuleIdentifier, Set<ModuleDependency>> scanned = delegate.findAllModules();
+			for (Map.Entry<String, Entry> mapEntry : current.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				entry.dependencies = scanned.get(entry.identifier);
+				if (entry.dependencies == null) {
+					//Added since the scan
+					entry.dependencies = delegate.loadDependencies(entry.identifier, new File(delegate.root, mapEntry.getKey()));
+				}
+			}
+		} else {
+			for (Map.Entry<String, Entry> mapEntry : current.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				Entry old = previous.get(mapEntry.getKey());
+				if (old != null && old.size == entry.size && old.lastModified == entry.lastModified && old.identifier.equals(entry.identifier)) {
+					entry.dependencies = old.dependencies;
+				} else {
+					entry.dependencies = delegate.loadDependencies(entry.identifier, new File(delegate.root, mapEntry.getKey()));
+					changed = true;
+				}
+			}
+		}
+
+		Map<ModuleIdentifier, Set<ModuleDependency>> modules = new HashMap<>();
+		for (Entry entry : current.values()) {
+			modules.put(entry.identifier, entry.dependencies);
+		}
+		if (changed) {
+			writeSnapshot(current);
+		}
+		this.modules = modules;
+		return modules;
+	}
+
+	/**
+	 * The resource roots are not kept in the snapshot, so these are always sized afresh for the modules found.
+	 */
+	@Override
+	public Map<ModuleIdentifier, Long> findResourceSizes() throws ModuleLoadException {
+		if (this.resourceSizes != null){
+			return this.resourceSizes;
+		}
+		Map<ModuleIdentifier, Long> resourceSizes = delegate.findResourceSizes(findAllModules().keySet());
+		this.resourceSizes = resourceSizes;
+		return resourceSizes;
+	}
+
+	@Override
+	public ModuleSpec findModule(ModuleIdentifier moduleId) throws ModuleLoadException {
+		return delegate.findModule(moduleId);
+	}
+
+	@Override
+	public Set<ModuleDependency> getModuleDependencies(ModuleSpec moduleSpec) throws ModuleLoadException {
+		return delegate.getModuleDependencies(moduleSpec);
+	}
+
+	private void stat(File dir, String relativePath, Map<String, Entry> entries) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files){
+			String path = relativePath + file.getName();
+			if (file.isDirectory()){
+				stat(file, path + File.separator, entries);
+			} else if (file.getName().equals(AbstractModuleSpecFinder.MODULE_XML)){
+				entries.put(path, new Entry(delegate.createModuleIdentifier(file), file.length(), file.lastModified()));
+			}
+		}
+	}
+
+	/**
+	 * Reads the snapshot file.
+	 *
+	 * @return the entries keyed by the path of the {@code module.xml} relative to the modules root, or {@code null}
+	 * if there is no usable snapshot
+	 */
+	private Map<String, Entry> readSnapshot() {
+		if (!snapshot.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(delegate.root.getAbsolutePath())) {
+				return null;
+			}
+			int count = in.readInt();
+			Map<String, Entry> entries = new HashMap<>(count * 2);
+			for (int i = 0 ; i < count ; i++) {
+				String path = in.readUTF();
+				ModuleIdentifier identifier = ModuleIdentifier.create(in.readUTF(), in.readUTF());
+				Entry entry = new Entry(identifier, in.readLong(), in.readLong());
+				int depCount = in.readInt();
+				entry.dependencies = new HashSet<>(depCount * 2);
+				for (int j = 0 ; j < depCount ; j++) {
+					ModuleIdentifier depId = ModuleIdentifier.create(in.readUTF(), in.readUTF());
+					entry.dependencies.add(new ModuleDependency(identifier, depId, in.readBoolean()));
+				}
+				entries.put(path, entry);
+			}
+			return entries;
+		} catch (IOException e) {
+			//Corrupt or from an older version, do a full scan and overwrite it
+			return null;
+		}
+	}
+
+	private void writeSnapshot(Map<String, Entry> entries) throws ModuleLoadException {
+		File dir = snapshot.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new ModuleLoadException("Could not create " + dir);
+		}
+		try {
+			File tmp = File.createTempFile(snapshot.getName(), ".tmp", dir);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(delegate.root.getAbsolutePath());
+				out.writeInt(entries.size());
+				for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+					Entry entry = mapEntry.getValue();
+					out.writeUTF(mapEntry.getKey());
+					out.writeUTF(entry.identifier.getName());
+					out.writeUTF(entry.identifier.getSlot());
+					out.writeLong(entry.size);
+					out.writeLong(entry.lastModified);
+					out.writeInt(entry.dependencies.size());
+					for (ModuleDependency dep : entry.dependencies) {
+						out.writeUTF(dep.getToId().getName());
+						out.writeUTF(dep.getToId().getSlot());
+						out.writeBoolean(dep.isOptional());
+					}
+				}
+			}
+			Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new ModuleLoadException("Could not write snapshot " + snapshot, e);
+		}
+	}
+
+	private static class Entry {
+		final ModuleIdentifier identifier;
+		final long size;
+		final long lastModified;
+		Set<ModuleDependency> dependencies;
+
+		Entry(ModuleIdentifier identifier, long size, long lastModified) {
+			this.identifier = identifier;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+}
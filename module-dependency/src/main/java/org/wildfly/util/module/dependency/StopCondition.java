@@ -0,0 +1,283 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * A condition for a search not to follow a dependency, built from primitives combined with {@link #and(StopCondition)},
+ * {@link #or(StopCondition)} and {@link #not()}. Before searching, a condition is {@link #compile(FrozenModuleGraph)}d
+ * against the graph's node numbering, so the sets of modules become bit sets and the checks made for each edge do
+ * not need to look at module names.
+ */
+public abstract class StopCondition {
+
+	/**
+	 * Never stops.
+	 */
+	public static final StopCondition NEVER = new StopCondition() {
+		@Override
+		Compiled compile(FrozenModuleGraph graph) {
+			return Compiled.NEVER;
+		}
+	};
+
+	/**
+	 * A condition compiled against a graph. A search asks it about each edge it would follow.
+	 */
+	interface Compiled {
+		/**
+		 * @param node the node the search is at
+		 * @param edge the edge the search would follow
+		 * @param depth the number of edges between the root of the search and {@code node}
+		 * @return whether not to follow the edge
+		 */
+		boolean endSearch(int node, int edge, int depth);
+
+		Compiled NEVER = new Compiled() {
+			@Override
+			public boolean endSearch(int node, int edge, int depth) {
+				return false;
+			}
+		};
+	}
+
+	abstract Compiled compile(FrozenModuleGraph graph);
+
+	/**
+	 * Whether the condition looks at the depth. A search using such a condition has to go into a module again if it
+	 * finds a shorter path to it, as the module may have been stopped at before.
+	 */
+	boolean usesDepth() {
+		return false;
+	}
+
+	/**
+	 * Stops at any of a set of modules, i.e. the modules are reached but the search does not go on from them.
+	 */
+	public static StopCondition at(final Collection<ModuleIdentifier> ids) {
+		return new StopCondition() {
+			@Override
+			Compiled compile(FrozenModuleGraph graph) {
+				final BitSet nodes = toNodes(graph, ids);
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						return nodes.get(node);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Stops at a module, see {@link #at(Collection)}.
+	 */
+	public static StopCondition at(ModuleIdentifier id) {
+		return at(Collections.singleton(id));
+	}
+
+	/**
+	 * Does not go into any of a set of modules, so they are not reached by the dependencies being followed.
+	 */
+	public static StopCondition before(final Collection<ModuleIdentifier> ids) {
+		return before(ids, null);
+	}
+
+	/**
+	 * Like {@link #before(Collection)}, also putting each of the modules the search would have gone into in
+	 * {@code refused}, with the last module the search found depending on it.
+	 */
+	static StopCondition before(final Collection<ModuleIdentifier> ids, final Map<ModuleIdentifier, ModuleIdentifier> refused) {
+		return new StopCondition() {
+			@Override
+			Compiled compile(final FrozenModuleGraph graph) {
+				final BitSet nodes = toNodes(graph, ids);
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						int target = graph.getTarget(edge);
+						if (!nodes.get(target)) {
+							return false;
+						}
+						if (refused != null) {
+							refused.put(graph.getModule(target), graph.getModule(node));
+						}
+						return true;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Does not follow optional dependencies.
+	 */
+	public static StopCondition optional() {
+		return new StopCondition() {
+			@Override
+			Compiled compile(final FrozenModuleGraph graph) {
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						return graph.isOptional(edge);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Does not follow dependencies from modules {@code depth} or more dependencies away from the root, so nothing
+	 * further away than {@code depth} is reached.
+	 */
+	public static StopCondition depth(final int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("Depth must not be negative: " + depth);
+		}
+		return new StopCondition() {
+			@Override
+			Compiled compile(FrozenModuleGraph graph) {
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int current) {
+						return current >= depth;
+					}
+				};
+			}
+
+			@Override
+			boolean usesDepth() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Adapts an {@link EndSearchCondition}. A {@link ModuleDependency} is created for each edge it is asked about.
+	 */
+	public static StopCondition of(final EndSearchCondition condition) {
+		if (condition == EndSearchCondition.NO_OP) {
+			return NEVER;
+		}
+		return new StopCondition() {
+			@Override
+			Compiled compile(final FrozenModuleGraph graph) {
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						ModuleIdentifier id = graph.getModule(node);
+						return condition.endSearch(id, new ModuleDependency(id, graph.getModule(graph.getTarget(edge)), graph.isOptional(edge)));
+					}
+				};
+			}
+		};
+	}
+
+	public StopCondition and(final StopCondition other) {
+		final StopCondition self = this;
+		return new StopCondition() {
+			@Override
+			Compiled compile(FrozenModuleGraph graph) {
+				final Compiled first = self.compile(graph);
+				final Compiled second = other.compile(graph);
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						return first.endSearch(node, edge, depth) && second.endSearch(node, edge, depth);
+					}
+				};
+			}
+
+			@Override
+			boolean usesDepth() {
+				return self.usesDepth() || other.usesDepth();
+			}
+		};
+	}
+
+	public StopCondition or(final StopCondition other) {
+		final StopCondition self = this;
+		return new StopCondition() {
+			@Override
+			Compiled compile(FrozenModuleGraph graph) {
+				final Compiled first = self.compile(graph);
+				final Compiled second = other.compile(graph);
+				if (first == Compiled.NEVER) {
+					return second;
+				}
+				if (second == Compiled.NEVER) {
+					return first;
+				}
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						return first.endSearch(node, edge, depth) || second.endSearch(node, edge, depth);
+					}
+				};
+			}
+
+			@Override
+			boolean usesDepth() {
+				return self.usesDepth() || other.usesDepth();
+			}
+		};
+	}
+
+	public StopCondition not() {
+		final StopCondition self = this;
+		return new StopCondition() {
+			@Override
+			Compiled compile(FrozenModuleGraph graph) {
+				final Compiled compiled = self.compile(graph);
+				return new Compiled() {
+					@Override
+					public boolean endSearch(int node, int edge, int depth) {
+						return !compiled.endSearch(node, edge, depth);
+					}
+				};
+			}
+
+			@Override
+			boolean usesDepth() {
+				return self.usesDepth();
+			}
+		};
+	}
+
+	private static BitSet toNodes(FrozenModuleGraph graph, Collection<ModuleIdentifier> ids) {
+		BitSet nodes = new BitSet(graph.size());
+		for (ModuleIdentifier id : ids) {
+			int node = graph.indexOf(id);
+			if (node >= 0) {
+				nodes.set(node);
+			}
+		}
+		return nodes;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Tarjan's strongly connected components of a {@link FrozenModuleGraph}, found without recursion. Components are
+ * numbered in the order Tarjan's algorithm completes them, which is a reverse topological order: every component
+ * only has edges to components with a lower number.
+ */
+class StronglyConnectedComponents {
+
+	private final int[] component;
+	private final int[] memberOffsets;
+	private final int[] members;
+
+	StronglyConnectedComponents(FrozenModuleGraph graph) {
+		int size = graph.size();
+		component = new int[size];
+		int[] index = new int[size];
+		int[] lowLink = new int[size];
+		Arrays.fill(index, -1);
+		BitSet onStack = new BitSet(size);
+		int[] sccStack = new int[size];
+		int sccTop = -1;
+		int[] callStack = new int[size];
+		int[] nextEdge = new int[size];
+		int nextIndex = 0;
+		int count = 0;
+
+		for (int start = 0 ; start < size ; start++) {
+			if (index[start] >= 0) {
+				continue;
+			}
+			int top = 0;
+			callStack[top] = start;
+			nextEdge[top] = graph.firstEdge(start);
+			index[start] = lowLink[start] = nextIndex++;
+			sccStack[++sccTop] = start;
+			onStack.set(start);
+			while (top >= 0) {
+				int node = callStack[top];
+				int edge = nextEdge[top];
+				if (edge < graph.endEdge(node)) {
+					nextEdge[top] = edge + 1;
+					int target = graph.getTarget(edge);
+					if (index[target] < 0) {
+						index[target] = lowLink[target] = nextIndex++;
+						sccStack[++sccTop] = target;
+						onStack.set(target);
+						top++;
+						callStack[top] = target;
+						nextEdge[top] = graph.firstEdge(target);
+					} else if (onStack.get(target)) {
+						lowLink[node] = Math.min(lowLink[node], index[target]);
+					}
+					continue;
+				}
+				if (lowLink[node] == index[node]) {
+					int member;
+					do {
+						member = sccStack[sccTop--];
+						onStack.clear(member);
+						component[member] = count;
+					} while (member != node);
+					count++;
+				}
+				top--;
+				if (top >= 0) {
+					int parent = callStack[top];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+				}
+			}
+		}
+
+		memberOffsets = new int[count + 1];
+		for (int node = 0 ; node < size ; node++) {
+			memberOffsets[component[node] + 1]++;
+		}
+		for (int c = 0 ; c < count ; c++) {
+			memberOffsets[c + 1] += memberOffsets[c];
+		}
+		members = new int[size];
+		int[] fill = Arrays.copyOf(memberOffsets, count);
+		for (int node = 0 ; node < size ; node++) {
+			members[fill[component[node]]++] = node;
+		}
+	}
+
+	int getComponentCount() {
+		return memberOffsets.length - 1;
+	}
+
+	int getComponent(int node) {
+		return component[node];
+	}
+
+	int getComponentSize(int component) {
+		return memberOffsets[component + 1] - memberOffsets[component];
+	}
+
+	/**
+	 * Gets the i'th node of a component, for {@code i} from zero up to the size of the component.
+	 */
+	int getMember(int component, int i) {
+		return members[memberOffsets[component] + i];
+	}
+}
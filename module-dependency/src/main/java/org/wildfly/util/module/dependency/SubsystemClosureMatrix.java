@@ -0,0 +1,268 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Which subsystems reach each module, and which subsystems each module reaches, for all the modules and subsystems
+ * at once. Every subsystem gets a bit, and the sets of subsystem bits are propagated along the dependencies in one
+ * sweep over the components of the {@link CondensedModuleGraph} in topological order, iterating within a dependency
+ * cycle until it settles.
+ * <p>
+ * Searches can be cut short with two masks of modules. A barrier module is reached, but only its own bit (if it is
+ * a subsystem) is passed on through it, like a search which stops at other subsystems. An excluded module is never
+ * reached, nor passed through. Every subsystem reaches itself, unless it is excluded.
+ */
+public class SubsystemClosureMatrix {
+
+	private final FrozenModuleGraph graph;
+	private final ModuleIdentifier[] subsystemIds;
+	//The subsystems reaching each node, and the subsystems each node reaches
+	private final BitSet[] reachedBy;
+	private final BitSet[] reaches;
+
+	SubsystemClosureMatrix(ModuleGraph graph, Collection<ModuleIdentifier> subsystems) {
+		this(graph.freeze(), subsystems, Collections.<ModuleIdentifier>emptySet(), Collections.<ModuleIdentifier>emptySet());
+	}
+
+	SubsystemClosureMatrix(FrozenModuleGraph graph, Collection<ModuleIdentifier> subsystems, Collection<ModuleIdentifier> barriers, Collection<ModuleIdentifier> excluded) {
+		this.graph = graph;
+		Set<ModuleIdentifier> sorted = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (ModuleIdentifier id : subsystems) {
+			if (graph.indexOf(id) >= 0) {
+				sorted.add(id);
+			}
+		}
+		this.subsystemIds = sorted.toArray(new ModuleIdentifier[sorted.size()]);
+
+		BitSet[] own = new BitSet[graph.size()];
+		for (int i = 0 ; i < subsystemIds.length ; i++) {
+			int node = graph.indexOf(subsystemIds[i]);
+			own[node] = new BitSet(subsystemIds.length);
+			own[node].set(i);
+		}
+		BitSet barrierMask = toNodes(barriers);
+		BitSet excludedMask = toNodes(excluded);
+		CondensedModuleGraph condensed = graph.getCondensedGraph();
+		this.reachedBy = propagate(graph, condensed, own, barrierMask, excludedMask, true);
+		this.reaches = propagate(graph.reverse(), condensed, own, barrierMask, excludedMask, false);
+	}
+
+	private BitSet toNodes(Collection<ModuleIdentifier> ids) {
+		BitSet nodes = new BitSet(graph.size());
+		for (ModuleIdentifier id : ids) {
+			int node = graph.indexOf(id);
+			if (node >= 0) {
+				nodes.set(node);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Propagates the subsystem bits along the edges of a graph.
+	 *
+	 * @param edges the graph, or its reverse to propagate from dependencies to the modules depending on them
+	 * @param descending whether to visit the components from the highest number down, which is the topological
+	 *        order of {@code edges} if it is not reversed
+	 */
+	private BitSet[] propagate(FrozenModuleGraph edges, CondensedModuleGraph condensed, BitSet[] own, BitSet barriers, BitSet excluded, boolean descending) {
+		int size = graph.size();
+		BitSet[] in = new BitSet[size];
+		BitSet[] out = new BitSet[size];
+		BitSet[] result = new BitSet[size];
+		for (int node = 0 ; node < size ; node++) {
+			in[node] = new BitSet(subsystemIds.length);
+		}
+		//A ring buffer, which never holds a node twice
+		int capacity = size + 1;
+		int[] worklist = new int[capacity];
+		BitSet queued = new BitSet(size);
+		int count = condensed.getComponentCount();
+		for (int i = 0 ; i < count ; i++) {
+			int c = descending ? count - 1 - i : i;
+			int componentSize = condensed.getComponentSize(c);
+			//Everything coming from outside the component is in by now, so settle the component
+			int head = 0;
+			int tail = 0;
+			for (int m = 0 ; m < componentSize ; m++) {
+				int node = condensed.getMember(c, m);
+				out[node] = out(node, in, own, barriers, excluded);
+				worklist[tail++] = node;
+				queued.set(node);
+			}
+			while (head != tail) {
+				int node = worklist[head];
+				head = (head + 1) % capacity;
+				queued.clear(node);
+				for (int edge = edges.firstEdge(node) ; edge < edges.endEdge(node) ; edge++) {
+					int target = edges.getTarget(edge);
+					if (condensed.getComponent(target) != c || excluded.get(target) || isSubset(out[node], in[target])) {
+						continue;
+					}
+					in[target].or(out[node]);
+					out[target] = out(target, in, own, barriers, excluded);
+					if (!queued.get(target)) {
+						queued.set(target);
+						worklist[tail] = target;
+						tail = (tail + 1) % capacity;
+					}
+				}
+			}
+			//then pass it on to the components after it
+			for (int m = 0 ; m < componentSize ; m++) {
+				int node = condensed.getMember(c, m);
+				for (int edge = edges.firstEdge(node) ; edge < edges.endEdge(node) ; edge++) {
+					int target = edges.getTarget(edge);
+					if (condensed.getComponent(target) != c && !excluded.get(target)) {
+						in[target].or(out[node]);
+					}
+				}
+				BitSet reached = (BitSet)in[node].clone();
+				if (own[node] != null && !excluded.get(node)) {
+					reached.or(own[node]);
+				}
+				result[node] = reached;
+				in[node] = null;
+				out[node] = null;
+			}
+		}
+		return result;
+	}
+
+	private static BitSet out(int node, BitSet[] in, BitSet[] own, BitSet barriers, BitSet excluded) {
+		if (excluded.get(node)) {
+			return new BitSet();
+		}
+		BitSet out = barriers.get(node) ? new BitSet() : (BitSet)in[node].clone();
+		if (own[node] != null) {
+			out.or(own[node]);
+		}
+		return out;
+	}
+
+	private static boolean isSubset(BitSet a, BitSet b) {
+		BitSet missing = (BitSet)a.clone();
+		missing.andNot(b);
+		return missing.isEmpty();
+	}
+
+	FrozenModuleGraph getModuleGraph() {
+		return graph;
+	}
+
+	/**
+	 * Gets the bits of the subsystems reaching a node, numbered as in {@link #getSubsystems()}. This is not a copy.
+	 */
+	BitSet getReachingSubsystems(int node) {
+		return reachedBy[node];
+	}
+
+	/**
+	 * Gets the subsystems in the matrix, sorted.
+	 */
+	public List<ModuleIdentifier> getSubsystems() {
+		return Collections.unmodifiableList(Arrays.asList(subsystemIds));
+	}
+
+	/**
+	 * Gets the subsystems reaching a module.
+	 */
+	public Set<ModuleIdentifier> getReachingSubsystems(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		return node < 0 ? Collections.<ModuleIdentifier>emptySet() : getSubsystems(reachedBy[node]);
+	}
+
+	/**
+	 * Gets the subsystems a module reaches.
+	 */
+	public Set<ModuleIdentifier> getReachedSubsystems(ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		return node < 0 ? Collections.<ModuleIdentifier>emptySet() : getSubsystems(reaches[node]);
+	}
+
+	/**
+	 * Gets the modules reached by a subsystem, including the subsystem itself.
+	 */
+	public Set<ModuleIdentifier> getModulesReachedBy(ModuleIdentifier subsystem) {
+		Set<ModuleIdentifier> modules = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		int bit = Arrays.binarySearch(subsystemIds, subsystem, Util.MODULE_ID_SLOT_COMPARATOR);
+		if (bit < 0) {
+			return modules;
+		}
+		for (int node = 0 ; node < reachedBy.length ; node++) {
+			if (reachedBy[node].get(bit)) {
+				modules.add(graph.getModule(node));
+			}
+		}
+		return modules;
+	}
+
+	private Set<ModuleIdentifier> getSubsystems(BitSet bits) {
+		Set<ModuleIdentifier> ids = new TreeSet<>(Util.MODULE_ID_SLOT_COMPARATOR);
+		for (int i = bits.nextSetBit(0) ; i >= 0 ; i = bits.nextSetBit(i + 1)) {
+			ids.add(subsystemIds[i]);
+		}
+		return ids;
+	}
+
+	/**
+	 * Writes the matrix as CSV, with a row per module and a column per subsystem. A cell is {@code 1} if the
+	 * subsystem reaches the module and {@code 0} if not, and the last two columns count the subsystems reaching the
+	 * module and the subsystems it reaches.
+	 */
+	public void writeCsv(Writer writer) throws IOException {
+		writer.write("module");
+		for (ModuleIdentifier id : subsystemIds) {
+			writer.write(',');
+			writer.write(id.toString());
+		}
+		writer.write(",reached-by,reaches\n");
+		List<ModuleIdentifier> modules = new ArrayList<>(graph.size());
+		for (int node = 0 ; node < graph.size() ; node++) {
+			modules.add(graph.getModule(node));
+		}
+		Collections.sort(modules, Util.MODULE_ID_SLOT_COMPARATOR);
+		for (ModuleIdentifier id : modules) {
+			int node = graph.indexOf(id);
+			writer.write(id.toString());
+			for (int i = 0 ; i < subsystemIds.length ; i++) {
+				writer.write(reachedBy[node].get(i) ? ",1" : ",0");
+			}
+			writer.write("," + reachedBy[node].cardinality() + "," + reaches[node].cardinality() + "\n");
+		}
+		writer.flush();
+	}
+}
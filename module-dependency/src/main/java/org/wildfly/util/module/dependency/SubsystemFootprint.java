@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.modules.ModuleIdentifier;
+
+/**
+ * Weighs the modules reached by each subsystem in a {@link SubsystemClosureMatrix} by the size of their resource
+ * roots, as found by {@link ModuleSpecFinder#findResourceSizes()}. Each module is only counted once per subsystem.
+ * A module reached by only one subsystem is exclusive to it and would go if the subsystem was removed, while a
+ * module reached by several is shared between them.
+ */
+public class SubsystemFootprint {
+
+	private final List<ModuleIdentifier> subsystems;
+	private final Footprint[] footprints;
+	private final long totalBytes;
+
+	SubsystemFootprint(SubsystemClosureMatrix matrix, Map<ModuleIdentifier, Long> sizes) {
+		this.subsystems = matrix.getSubsystems();
+		FrozenModuleGraph graph = matrix.getModuleGraph();
+		long[] exclusive = new long[subsystems.size()];
+		long[] shared = new long[subsystems.size()];
+		int[] moduleCounts = new int[subsystems.size()];
+		long total = 0;
+		for (int node = 0 ; node < graph.size() ; node++) {
+			BitSet reachingSubsystems = matrix.getReachingSubsystems(node);
+			int reachingCount = reachingSubsystems.cardinality();
+			if (reachingCount == 0) {
+				continue;
+			}
+			Long size = sizes.get(graph.getModule(node));
+			long bytes = size == null ? 0 : size;
+			total += bytes;
+			for (int i = reachingSubsystems.nextSetBit(0) ; i >= 0 ; i = reachingSubsystems.nextSetBit(i + 1)) {
+				if (reachingCount == 1) {
+					exclusive[i] += bytes;
+				} else {
+					shared[i] += bytes;
+				}
+				moduleCounts[i]++;
+			}
+		}
+		this.footprints = new Footprint[subsystems.size()];
+		for (int i = 0 ; i < footprints.length ; i++) {
+			footprints[i] = new Footprint(subsystems.get(i), exclusive[i], shared[i], moduleCounts[i]);
+		}
+		this.totalBytes = total;
+	}
+
+	/**
+	 * Gets the footprint of a subsystem.
+	 *
+	 * @return the footprint, or {@code null} if the module is not one of the subsystems
+	 */
+	public Footprint getFootprint(ModuleIdentifier subsystem) {
+		int i = Collections.binarySearch(subsystems, subsystem, Util.MODULE_ID_SLOT_COMPARATOR);
+		return i < 0 ? null : footprints[i];
+	}
+
+	/**
+	 * Gets the footprints of all the subsystems, the biggest first.
+	 */
+	public List<Footprint> getFootprints() {
+		List<Footprint> list = new ArrayList<>(footprints.length);
+		Collections.addAll(list, footprints);
+		Collections.sort(list, new Comparator<Footprint>() {
+			@Override
+			public int compare(Footprint o1, Footprint o2) {
+				int result = Long.compare(o2.getTotalBytes(), o1.getTotalBytes());
+				return result != 0 ? result : Util.MODULE_ID_SLOT_COMPARATOR.compare(o1.getSubsystem(), o2.getSubsystem());
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Gets the number of bytes of all the modules reached by at least one subsystem, counting each module once.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * The bytes reached by one subsystem.
+	 */
+	public static class Footprint {
+		private final ModuleIdentifier subsystem;
+		private final long exclusiveBytes;
+		private final long sharedBytes;
+		private final int moduleCount;
+
+		Footprint(ModuleIdentifier subsystem, long exclusiveBytes, long sharedBytes, int moduleCount) {
+			this.subsystem = subsystem;
+			this.exclusiveBytes = exclusiveBytes;
+			this.sharedBytes = sharedBytes;
+			this.moduleCount = moduleCount;
+		}
+
+		public ModuleIdentifier getSubsystem() {
+			return subsystem;
+		}
+
+		/**
+		 * Gets the number of bytes of the modules no other subsystem reaches.
+		 */
+		public long getExclusiveBytes() {
+			return exclusiveBytes;
+		}
+
+		/**
+		 * Gets the number of bytes of the modules other subsystems reach too.
+		 */
+		public long getSharedBytes() {
+			return sharedBytes;
+		}
+
+		public long getTotalBytes() {
+			return exclusiveBytes + sharedBytes;
+		}
+
+		/**
+		 * Gets the number of modules reached, including the subsystem itself.
+		 */
+		public int getModuleCount() {
+			return moduleCount;
+		}
+
+		@Override
+		public String toString() {
+			return subsystem + " " + getTotalBytes() + " bytes (" + exclusiveBytes + " exclusive, " + sharedBytes + " shared) in " + moduleCount + " modules";
+		}
+	}
+}
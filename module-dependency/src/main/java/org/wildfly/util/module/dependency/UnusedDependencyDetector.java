@@ -0,0 +1,227 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.jboss.modules.ModuleIdentifier;
+import org.jboss.modules.ModuleLoadException;
+
+/**
+ * Finds the declared dependencies which none of a module's classes use. The resource roots of every module are
+ * indexed in parallel with a {@link PackageIndex}, giving the packages each module holds and the packages its
+ * classes refer to. A dependency is unused if the module refers to none of the packages of the module it depends on.
+ * <p>
+ * A dependency is only judged if both modules have classes, so dependencies on modules which only re-export other
+ * modules or system paths are left alone. Packages re-exported by a module with classes of its own, and classes
+ * only used by reflection or through services, are not seen, so the unused dependencies are candidates to be
+ * checked rather than safe to remove.
+ */
+public class UnusedDependencyDetector {
+
+	private final FrozenModuleGraph graph;
+	//The packages of each node and the packages its classes refer to, null if it has no classes
+	private final List<Set<String>> packages;
+	private final List<Set<String>> references;
+
+	UnusedDependencyDetector(ModuleGraph graph, File modulesRoot, PackageIndex index, int parallelism) throws IOException, ModuleLoadException {
+		this(graph.freeze(), modulesRoot, index, parallelism);
+	}
+
+	/**
+	 * @param modulesRoot the modules root the graph was read from
+	 * @param index the index to read the resource roots with
+	 * @param parallelism the number of threads to index the resource roots with
+	 */
+	UnusedDependencyDetector(FrozenModuleGraph graph, File modulesRoot, PackageIndex index, int parallelism) throws IOException, ModuleLoadException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.graph = graph;
+		this.packages = new ArrayList<>(Collections.<Set<String>>nCopies(graph.size(), null));
+		this.references = new ArrayList<>(Collections.<Set<String>>nCopies(graph.size(), null));
+
+		List<Callable<Void>> tasks = new ArrayList<>(graph.size());
+		for (int node = 0 ; node < graph.size() ; node++) {
+			final File dir = AbstractModuleSpecFinder.getModuleDirectory(modulesRoot, graph.getModule(node));
+			final File moduleXml = new File(dir, AbstractModuleSpecFinder.MODULE_XML);
+			if (!moduleXml.exists()) {
+				continue;
+			}
+			tasks.add(new IndexTask(node, dir, moduleXml, index));
+		}
+		if (parallelism == 1) {
+			for (Callable<Void> task : tasks) {
+				call(task);
+			}
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				for (Future<Void> future : pool.invokeAll(tasks)) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted indexing the resource roots", e);
+					} catch (ExecutionException e) {
+						rethrow(e.getCause());
+					}
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static void call(Callable<Void> task) throws IOException, ModuleLoadException {
+		try {
+			task.call();
+		} catch (Exception e) {
+			rethrow(e);
+		}
+	}
+
+	private static void rethrow(Throwable t) throws IOException, ModuleLoadException {
+		if (t instanceof IOException) {
+			throw (IOException)t;
+		}
+		if (t instanceof ModuleLoadException) {
+			throw (ModuleLoadException)t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		throw new IOException(t);
+	}
+
+	/**
+	 * Gets the dependencies which are not used, sorted by the module they are from.
+	 */
+	public List<ModuleDependency> getUnusedDependencies() {
+		List<ModuleDependency> unused = new ArrayList<>();
+		for (int node = 0 ; node < graph.size() ; node++) {
+			if (references.get(node) == null) {
+				continue;
+			}
+			for (int edge = graph.firstEdge(node) ; edge < graph.endEdge(node) ; edge++) {
+				int target = graph.getTarget(edge);
+				if (target != node && packages.get(target) != null && Collections.disjoint(references.get(node), packages.get(target))) {
+					unused.add(new ModuleDependency(graph.getModule(node), graph.getModule(target), graph.isOptional(edge)));
+				}
+			}
+		}
+		Collections.sort(unused, new Comparator<ModuleDependency>() {
+			@Override
+			public int compare(ModuleDependency o1, ModuleDependency o2) {
+				int result = Util.MODULE_ID_SLOT_COMPARATOR.compare(o1.getFromId(), o2.getFromId());
+				return result != 0 ? result : Util.MODULE_ID_SLOT_COMPARATOR.compare(o1.getToId(), o2.getToId());
+			}
+		});
+		return unused;
+	}
+
+	/**
+	 * Gets the packages of the module depended on which the dependent module refers to.
+	 *
+	 * @return the packages, sorted, which are empty if the dependency is unused or one of the modules has no classes
+	 */
+	public Set<String> getUsedPackages(ModuleDependency dep) {
+		Set<String> used = new TreeSet<>();
+		int from = graph.indexOf(dep.getFromId());
+		int to = graph.indexOf(dep.getToId());
+		if (from >= 0 && to >= 0 && references.get(from) != null && packages.get(to) != null) {
+			used.addAll(references.get(from));
+			used.retainAll(packages.get(to));
+		}
+		return used;
+	}
+
+	/**
+	 * Gets the packages holding the classes of a module, sorted.
+	 */
+	public Set<String> getPackages(ModuleIdentifier id) {
+		return sorted(packages, id);
+	}
+
+	/**
+	 * Gets the packages the classes of a module refer to, sorted. These include the module's own packages.
+	 */
+	public Set<String> getReferencedPackages(ModuleIdentifier id) {
+		return sorted(references, id);
+	}
+
+	private Set<String> sorted(List<Set<String>> packages, ModuleIdentifier id) {
+		int node = graph.indexOf(id);
+		if (node < 0 || packages.get(node) == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new TreeSet<>(packages.get(node)));
+	}
+
+	/**
+	 * Indexes the resource roots of one module.
+	 */
+	private class IndexTask implements Callable<Void> {
+		private final int node;
+		private final File dir;
+		private final File moduleXml;
+		private final PackageIndex index;
+
+		IndexTask(int node, File dir, File moduleXml, PackageIndex index) {
+			this.node = node;
+			this.dir = dir;
+			this.moduleXml = moduleXml;
+			this.index = index;
+		}
+
+		@Override
+		public Void call() throws IOException, ModuleLoadException {
+			Set<String> nodePackages = new HashSet<>();
+			Set<String> nodeReferences = new HashSet<>();
+			for (String resourceRoot : ModuleXmlParser.parseResourceRoots(graph.getModule(node), moduleXml)) {
+				PackageIndex.Packages indexed = index.index(dir.toPath().resolve(resourceRoot));
+				if (indexed != null) {
+					nodePackages.addAll(indexed.getPackages());
+					nodeReferences.addAll(indexed.getReferences());
+				}
+			}
+			if (!nodePackages.isEmpty()) {
+				packages.set(node, nodePackages);
+				references.set(node, nodeReferences);
+			}
+			return null;
+		}
+	}
+}
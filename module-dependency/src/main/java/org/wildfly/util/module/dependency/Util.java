@@ -23,6 +23,12 @@
 package org.wildfly.util.module.dependency;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -41,6 +47,45 @@ public class Util {
 		}
 	};
 
+	/**
+	 * Like {@link #MODULE_ID_COMPARATOR}, but modules which only differ by slot are not equal.
+	 */
+	static final Comparator<ModuleIdentifier> MODULE_ID_SLOT_COMPARATOR = new Comparator<ModuleIdentifier>() {
+		@Override
+		public int compare(ModuleIdentifier o1, ModuleIdentifier o2) {
+			int result = MODULE_ID_COMPARATOR.compare(o1, o2);
+			if (result == 0) {
+				result = o1.getName().compareTo(o2.getName());
+			}
+			return result != 0 ? result : o1.getSlot().compareTo(o2.getSlot());
+		}
+	};
+
+
+	/**
+	 * Gets the size of a file, or the total size of the files under a directory, from the file attributes alone.
+	 * Archives are not opened.
+	 *
+	 * @return the size, or {@code 0} if the path does not exist
+	 */
+	static long sizeOf(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attributes.isDirectory()) {
+			return attributes.size();
+		}
+		final long[] size = new long[1];
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				size[0] += attrs.size();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
 
 	static void safeClose(Closeable c) {
 		try {
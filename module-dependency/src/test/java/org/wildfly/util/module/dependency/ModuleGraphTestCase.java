@@ -22,11 +22,20 @@
 
 package org.wildfly.util.module.dependency;
 
+import java.io.StringWriter;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.jboss.modules.ModuleIdentifier;
 import org.junit.Assert;
@@ -69,6 +78,22 @@ public class ModuleGraphTestCase {
         checkDeps(reverse, "d");
     }
 
+    @Test
+    public void testModuleDependencyGraphDependents() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        graph.addDependency(id("c"), new ModuleDependency(id("c"), id("b"), true));
+        checkDeps(createDepSet(dep("b", "a"), new ModuleDependency(id("b"), id("c"), true)), graph.getDependents(id("b")));
+        Assert.assertEquals(Collections.emptySet(), graph.getDependents(id("a")));
+
+        //The index is kept up to date once built
+        addDependency(graph, "d", "b");
+        addDependency(graph, "d", "a");
+        checkDeps(createDepSet(dep("b", "a"), new ModuleDependency(id("b"), id("c"), true), dep("b", "d")), graph.getDependents(id("b")));
+        checkDeps(createDepSet(dep("a", "d")), graph.getDependents(id("a")));
+        checkDeps(createDepSet(dep("a", "d")), graph.reverse().getDependencies(id("a")));
+    }
+
     @Test
     public void testDependencyPathDFS() {
         ModuleGraph graph = new ModuleGraph();
@@ -97,6 +122,45 @@ public class ModuleGraphTestCase {
         Assert.assertTrue(path.isEmpty());
     }
 
+    @Test
+    public void testDependencyPathDFSEndSearchCondition() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "d");
+        addDependency(graph, "a", "e");
+        addDependency(graph, "e", "f");
+
+        DependencyPathDFS search = new DependencyPathDFS(graph, id("a"), new EndSearchCondition() {
+            @Override
+            public boolean endSearch(ModuleIdentifier id, ModuleDependency dep) {
+                return dep.getToId().equals(id("c")) || id.equals(id("e"));
+            }
+        });
+        //The module the search ends at is not included
+        Assert.assertEquals(createIdSet("a", "b", "e"), search.getAllModules());
+        Assert.assertTrue(search.simplePathTo(id("c")).isEmpty());
+        Assert.assertTrue(search.simplePathTo(id("f")).isEmpty());
+        Assert.assertEquals(createIdList("a", "e"), search.simplePathTo(id("e")));
+    }
+
+    @Test
+    public void testDependencyPathDFSLongChain() {
+        ModuleGraph graph = new ModuleGraph();
+        int length = 200000;
+        for (int i = 1 ; i < length ; i++) {
+            addDependency(graph, "m" + (i - 1), "m" + i);
+        }
+        addDependency(graph, "m" + (length - 1), "m0");
+
+        DependencyPathDFS search = new DependencyPathDFS(graph, id("m0"));
+        Assert.assertEquals(length, search.getAllModules().size());
+        List<ModuleIdentifier> path = search.simplePathTo(id("m" + (length - 1)));
+        Assert.assertEquals(length, path.size());
+        Assert.assertEquals(id("m0"), path.get(0));
+        Assert.assertEquals(id("m" + (length - 1)), path.get(length - 1));
+    }
+
     @Test
     public void testDependencyPathBFS() {
         ModuleGraph graph = new ModuleGraph();
@@ -136,6 +200,34 @@ public class ModuleGraphTestCase {
         Assert.assertTrue(path.isEmpty());
     }
 
+    @Test
+    public void testDependencyPathBFSParallel() {
+        Random random = new Random(19);
+        ModuleGraph graph = new ModuleGraph();
+        for (int i = 0 ; i < 40000 ; i++) {
+            addDependency(graph, "m" + random.nextInt(20000), "m" + random.nextInt(20000));
+        }
+        FrozenModuleGraph frozen = graph.freeze();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DependencyPathBFS sequential = new DependencyPathBFS(frozen, id("m0"), null);
+            DependencyPathBFS parallel = new DependencyPathBFS(frozen, id("m0"), pool);
+            Assert.assertTrue(sequential.getAllModules().size() > 1000);
+            Assert.assertEquals(sequential.getAllModules(), parallel.getAllModules());
+            for (ModuleIdentifier id : sequential.getAllModules()) {
+                List<ModuleIdentifier> path = parallel.pathTo(id);
+                Assert.assertEquals(sequential.pathTo(id).size(), path.size());
+                Assert.assertEquals(id("m0"), path.get(0));
+                for (int i = 1 ; i < path.size() ; i++) {
+                    Assert.assertTrue(graph.getDependencies(path.get(i - 1)).contains(new ModuleDependency(path.get(i - 1), path.get(i), false)));
+                }
+            }
+            Assert.assertFalse(parallel.hasPathTo(id("unknown")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testAllDependencyPathsSearch() {
         ModuleGraph graph = new ModuleGraph();
@@ -191,6 +283,884 @@ public class ModuleGraphTestCase {
         Assert.assertTrue(expected.containsAll(paths));
     }
 
+    @Test
+    public void testFrozenModuleGraph() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "a", "c");
+        graph.addDependency(id("c"), new ModuleDependency(id("c"), id("d"), true));
+
+        FrozenModuleGraph frozen = graph.freeze();
+        Assert.assertSame(frozen, graph.freeze());
+        Assert.assertEquals(4, frozen.size());
+        Assert.assertEquals(3, frozen.getEdgeCount());
+        Assert.assertEquals(-1, frozen.indexOf(id("x")));
+        for (String id : new String[] {"a", "b", "c", "d"}) {
+            int node = frozen.indexOf(id(id));
+            Assert.assertEquals(id(id), frozen.getModule(node));
+            checkDeps(frozen.getDependencies(id(id)), graph.getDependencies(id(id)));
+        }
+        int c = frozen.indexOf(id("c"));
+        Assert.assertEquals(1, frozen.endEdge(c) - frozen.firstEdge(c));
+        Assert.assertEquals(id("d"), frozen.getModule(frozen.getTarget(frozen.firstEdge(c))));
+        Assert.assertTrue(frozen.isOptional(frozen.firstEdge(c)));
+        int a = frozen.indexOf(id("a"));
+        for (int edge = frozen.firstEdge(a) ; edge < frozen.endEdge(a) ; edge++) {
+            Assert.assertFalse(frozen.isOptional(edge));
+        }
+
+        Assert.assertEquals(createIdList("a", "c", "d"), new DependencyPathDFS(frozen, id("a"), EndSearchCondition.NO_OP).simplePathTo(id("d")));
+        Assert.assertEquals(createIdList("a", "c", "d"), new DependencyPathBFS(frozen, id("a")).pathTo(id("d")));
+        Assert.assertEquals(Collections.singletonList(createIdList("a", "c", "d")), new AllDependencyPathsDFS(frozen, id("a"), id("d")).pathsTo());
+
+        addDependency(graph, "d", "e");
+        Assert.assertTrue(frozen != graph.freeze());
+        Assert.assertEquals(5, graph.freeze().size());
+        Assert.assertEquals(createIdList("a", "c", "d", "e"), new DependencyPathBFS(graph, id("a")).pathTo(id("e")));
+    }
+
+    @Test
+    public void testSearchFromUnknownModule() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+
+        DependencyPathDFS dfs = new DependencyPathDFS(graph, id("x"));
+        Assert.assertEquals(createIdSet("x"), dfs.getAllModules());
+        Assert.assertEquals(createIdList("x"), dfs.simplePathTo(id("x")));
+        Assert.assertTrue(dfs.simplePathTo(id("a")).isEmpty());
+
+        DependencyPathBFS bfs = new DependencyPathBFS(graph, id("x"));
+        Assert.assertEquals(createIdSet("x"), bfs.getAllModules());
+        Assert.assertTrue(bfs.pathTo(id("b")).isEmpty());
+
+        Assert.assertTrue(new AllDependencyPathsDFS(graph, id("x"), id("b")).pathsTo().isEmpty());
+        Assert.assertTrue(new AllDependencyPathsDFS(graph, id("a"), id("x")).pathsTo().isEmpty());
+    }
+
+    @Test
+    public void testReachabilityIndex() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "a");//loop
+        addDependency(graph, "c", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "e", "d");//loop
+        addDependency(graph, "f", "a");
+        addDependency(graph, "f", "g");
+        addDependency(graph, "g", "g");//self loop
+
+        ReachabilityIndex index = graph.getReachabilityIndex();
+        Assert.assertSame(index, graph.getReachabilityIndex());
+        for (String from : new String[] {"a", "b", "c", "d", "e", "f", "g"}) {
+            DependencyPathDFS search = new DependencyPathDFS(graph, id(from));
+            Assert.assertEquals(search.getAllModules(), index.closureOf(id(from)));
+            for (String to : new String[] {"a", "b", "c", "d", "e", "f", "g", "x"}) {
+                Assert.assertEquals(from + "->" + to, search.isCoreDependency(id(to)), index.reaches(id(from), id(to)));
+            }
+        }
+        Assert.assertTrue(index.reaches(id("x"), id("x")));
+        Assert.assertFalse(index.reaches(id("x"), id("a")));
+        Assert.assertEquals(createIdSet("x"), index.closureOf(id("x")));
+
+        addDependency(graph, "e", "f");
+        Assert.assertTrue(index != graph.getReachabilityIndex());
+        Assert.assertTrue(graph.getReachabilityIndex().reaches(id("d"), id("g")));
+    }
+
+    @Test
+    public void testCondensedModuleGraph() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "a");//loop
+        addDependency(graph, "a", "d");
+        addDependency(graph, "b", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "e", "d");//loop
+        addDependency(graph, "e", "f");
+        addDependency(graph, "g", "g");//self loop
+        addDependency(graph, "g", "f");
+
+        CondensedModuleGraph condensed = graph.getCondensedGraph();
+        Assert.assertSame(condensed, graph.getCondensedGraph());
+        Assert.assertEquals(4, condensed.getComponentCount());
+        Assert.assertEquals(3, condensed.getEdgeCount());
+
+        int abc = condensed.getComponent(id("a"));
+        int de = condensed.getComponent(id("d"));
+        int f = condensed.getComponent(id("f"));
+        int g = condensed.getComponent(id("g"));
+        Assert.assertEquals(-1, condensed.getComponent(id("x")));
+        Assert.assertEquals(abc, condensed.getComponent(id("b")));
+        Assert.assertEquals(abc, condensed.getComponent(id("c")));
+        Assert.assertEquals(de, condensed.getComponent(id("e")));
+        Assert.assertEquals(createIdSet("a", "b", "c"), new HashSet<>(condensed.getModules(abc)));
+
+        //Reverse topological numbering
+        Assert.assertTrue(abc > de);
+        Assert.assertTrue(de > f);
+        Assert.assertTrue(g > f);
+
+        Assert.assertEquals(1, condensed.endEdge(abc) - condensed.firstEdge(abc));
+        Assert.assertEquals(de, condensed.getTarget(condensed.firstEdge(abc)));
+        Assert.assertEquals(2, condensed.getMultiplicity(condensed.firstEdge(abc)));
+        Assert.assertEquals(0, condensed.endEdge(f) - condensed.firstEdge(f));
+
+        Assert.assertTrue(condensed.isCycle(abc));
+        Assert.assertTrue(condensed.isCycle(de));
+        Assert.assertTrue(condensed.isCycle(g));
+        Assert.assertFalse(condensed.isCycle(f));
+
+        List<Set<ModuleIdentifier>> cycles = condensed.getCycles();
+        Assert.assertEquals(3, cycles.size());
+        Assert.assertEquals(createIdSet("a", "b", "c"), new HashSet<>(cycles.get(0)));
+        Assert.assertEquals(createIdSet("d", "e"), new HashSet<>(cycles.get(1)));
+        Assert.assertEquals(createIdSet("g"), new HashSet<>(cycles.get(2)));
+    }
+
+    @Test
+    public void testCondensedModuleGraphSlots() {
+        ModuleGraph graph = new ModuleGraph();
+        ModuleIdentifier main = ModuleIdentifier.create("x", "main");
+        ModuleIdentifier other = ModuleIdentifier.create("x", "other");
+        graph.addDependency(main, new ModuleDependency(main, other, false));
+        graph.addDependency(other, new ModuleDependency(other, main, false));
+
+        List<Set<ModuleIdentifier>> cycles = graph.getCondensedGraph().getCycles();
+        Assert.assertEquals(1, cycles.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, other)), new HashSet<>(cycles.get(0)));
+    }
+
+    @Test
+    public void testAllDependencyPathsSearchCaps() {
+        ModuleGraph graph = createAllPathsGraph();
+
+        AllDependencyPathsDFS search = new AllDependencyPathsDFS(graph, id("a"), id("z"));
+        Assert.assertEquals(4, search.pathsTo().size());
+        Assert.assertFalse(search.isTruncated());
+
+        search = new AllDependencyPathsDFS(graph, id("a"), id("z"), 2, Integer.MAX_VALUE);
+        Assert.assertEquals(2, search.pathsTo().size());
+        Assert.assertTrue(search.isTruncated());
+
+        search = new AllDependencyPathsDFS(graph, id("a"), id("z"), Integer.MAX_VALUE, 4);
+        List<List<ModuleIdentifier>> expected = new ArrayList<>();
+        expected.add(createIdList("a", "i", "z"));
+        expected.add(createIdList("a", "j", "k", "z"));
+        Assert.assertEquals(expected.size(), search.pathsTo().size());
+        Assert.assertTrue(expected.containsAll(search.pathsTo()));
+        Assert.assertTrue(search.isTruncated());
+
+        search = new AllDependencyPathsDFS(graph, id("a"), id("c"));
+        Assert.assertEquals(2, search.pathsTo().size());
+        search = new AllDependencyPathsDFS(graph, id("z"), id("a"));
+        Assert.assertTrue(search.pathsTo().isEmpty());
+        search = new AllDependencyPathsDFS(graph, id("a"), id("a"));
+        Assert.assertEquals(Collections.singletonList(createIdList("a")), search.pathsTo());
+    }
+
+    @Test
+    public void testAllDependencyPathsLazy() {
+        ModuleGraph graph = createAllPathsGraph();
+        AllDependencyPathsDFS search = new AllDependencyPathsDFS(graph, id("a"), id("z"), 4, Integer.MAX_VALUE);
+        List<List<ModuleIdentifier>> iterated = new ArrayList<>();
+        for (List<ModuleIdentifier> path : search) {
+            iterated.add(path);
+        }
+        Assert.assertEquals(search.pathsTo(), iterated);
+        Assert.assertEquals(iterated, search.stream().collect(Collectors.toList()));
+        //Exactly four paths, so the cap did not cut any off
+        Assert.assertFalse(search.isTruncated());
+
+        //The iterator tells whether paths were cut off without collecting them
+        AllDependencyPathsDFS.PathIterator capped = new AllDependencyPathsDFS(graph, id("a"), id("z"), 2, Integer.MAX_VALUE).iterator();
+        capped.next();
+        capped.next();
+        Assert.assertFalse(capped.hasNext());
+        Assert.assertTrue(capped.isTruncated());
+        //Asking again does not search any further
+        Assert.assertTrue(capped.isTruncated());
+        capped = new AllDependencyPathsDFS(graph, id("a"), id("z"), 4, Integer.MAX_VALUE).iterator();
+        while (capped.hasNext()) {
+            capped.next();
+        }
+        Assert.assertFalse(capped.isTruncated());
+        Assert.assertFalse(capped.isTruncated());
+
+        //Exactly one path over the cap
+        capped = new AllDependencyPathsDFS(graph, id("a"), id("z"), 3, Integer.MAX_VALUE).iterator();
+        while (capped.hasNext()) {
+            capped.next();
+        }
+        Assert.assertTrue(capped.isTruncated());
+        Assert.assertTrue(capped.isTruncated());
+
+        //2^40 paths through a chain of diamonds
+        graph = new ModuleGraph();
+        for (int i = 0 ; i < 40 ; i++) {
+            addDependency(graph, "m" + i, "l" + i);
+            addDependency(graph, "m" + i, "r" + i);
+            addDependency(graph, "l" + i, "m" + (i + 1));
+            addDependency(graph, "r" + i, "m" + (i + 1));
+        }
+        search = new AllDependencyPathsDFS(graph, id("m0"), id("m40"));
+        List<List<ModuleIdentifier>> first = search.stream().limit(5).collect(Collectors.toList());
+        Assert.assertEquals(5, first.size());
+        Assert.assertEquals(5, new HashSet<>(first).size());
+        for (List<ModuleIdentifier> path : first) {
+            Assert.assertEquals(81, path.size());
+        }
+        Iterator<List<ModuleIdentifier>> it = search.iterator();
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(first.get(0), it.next());
+    }
+
+    @Test
+    public void testDependencyPathCounter() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "a", "c");
+        addDependency(graph, "b", "d");
+        addDependency(graph, "c", "d");
+        addDependency(graph, "a", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "d", "f");
+        addDependency(graph, "e", "z");
+        addDependency(graph, "f", "z");
+        addDependency(graph, "c", "z");
+        addDependency(graph, "z", "y");
+
+        for (String target : new String[] {"a", "b", "d", "z", "y"}) {
+            int paths = new AllDependencyPathsDFS(graph, id("a"), id(target)).pathsTo().size();
+            Assert.assertEquals(BigInteger.valueOf(paths), new DependencyPathCounter(graph, id("a"), id(target)).getPathCount());
+        }
+
+        DependencyPathCounter counter = new DependencyPathCounter(graph, id("a"), id("z"));
+        Assert.assertEquals(BigInteger.valueOf(7), counter.getPathCount());
+        Map<ModuleDependency, BigInteger> edgeCounts = counter.getEdgeCounts();
+        for (Map.Entry<ModuleDependency, BigInteger> entry : edgeCounts.entrySet()) {
+            int paths = 0;
+            for (List<ModuleIdentifier> path : new AllDependencyPathsDFS(graph, id("a"), id("z")).pathsTo()) {
+                for (int i = 1 ; i < path.size() ; i++) {
+                    if (path.get(i - 1).equals(entry.getKey().getFromId()) && path.get(i).equals(entry.getKey().getToId())) {
+                        paths++;
+                    }
+                }
+            }
+            Assert.assertEquals(entry.getKey().toString(), BigInteger.valueOf(paths), entry.getValue());
+        }
+        Assert.assertEquals(10, edgeCounts.size());
+        Assert.assertEquals(BigInteger.valueOf(3), edgeCounts.values().iterator().next());
+        Assert.assertEquals(BigInteger.ZERO, counter.getPathCount(dep("z", "y")));
+        Assert.assertEquals(BigInteger.ZERO, new DependencyPathCounter(graph, id("z"), id("a")).getPathCount());
+        Assert.assertEquals(BigInteger.ZERO, new DependencyPathCounter(graph, id("a"), id("x")).getPathCount());
+
+        //2^60 paths through a chain of diamonds
+        graph = new ModuleGraph();
+        for (int i = 0 ; i < 60 ; i++) {
+            addDependency(graph, "m" + i, "l" + i);
+            addDependency(graph, "m" + i, "r" + i);
+            addDependency(graph, "l" + i, "m" + (i + 1));
+            addDependency(graph, "r" + i, "m" + (i + 1));
+        }
+        counter = new DependencyPathCounter(graph, id("m0"), id("m60"));
+        Assert.assertEquals(BigInteger.valueOf(2).pow(60), counter.getPathCount());
+        Assert.assertEquals(BigInteger.valueOf(2).pow(59), counter.getPathCount(dep("m0", "l0")));
+    }
+
+    @Test
+    public void testFrozenModuleGraphReverse() {
+        ModuleGraph graph = createAllPathsGraph();
+        FrozenModuleGraph frozen = graph.freeze();
+        FrozenModuleGraph reverse = frozen.reverse();
+        Assert.assertSame(reverse, frozen.reverse());
+        Assert.assertSame(frozen, reverse.reverse());
+        Assert.assertEquals(frozen.getEdgeCount(), reverse.getEdgeCount());
+        ModuleGraph expected = graph.reverse();
+        for (int node = 0 ; node < frozen.size() ; node++) {
+            ModuleIdentifier id = frozen.getModule(node);
+            Assert.assertEquals(node, reverse.indexOf(id));
+            checkDeps(expected.getDependencies(id), reverse.getDependencies(id));
+        }
+    }
+
+    @Test
+    public void testNearestSubsystems() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "s1", "a");
+        addDependency(graph, "a", "c");
+        addDependency(graph, "s2", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "s1", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "s2", "e");
+        addDependency(graph, "e", "f");
+        addDependency(graph, "s1", "s2");
+        addDependency(graph, "x", "s1");
+
+        NearestSubsystems nearest = new NearestSubsystems(graph.freeze(), createIdSet("s1", "s2", "unknown"));
+        Assert.assertEquals(createIdSet("s1"), nearest.getNearestSubsystems(id("s1")));
+        Assert.assertEquals(0, nearest.getDistance(id("s1")));
+        Assert.assertEquals(createIdSet("s2"), nearest.getNearestSubsystems(id("s2")));
+        Assert.assertEquals(0, nearest.getDistance(id("s2")));
+        Assert.assertEquals(createIdSet("s2"), nearest.getNearestSubsystems(id("e")));
+        Assert.assertEquals(1, nearest.getDistance(id("e")));
+        Assert.assertEquals(createIdSet("s2"), nearest.getNearestSubsystems(id("f")));
+        Assert.assertEquals(2, nearest.getDistance(id("f")));
+        Assert.assertEquals(createIdSet("s1", "s2"), nearest.getNearestSubsystems(id("c")));
+        Assert.assertEquals(2, nearest.getDistance(id("c")));
+        Assert.assertTrue(nearest.isShared(id("c")));
+        Assert.assertFalse(nearest.isShared(id("e")));
+
+        Assert.assertEquals(Collections.emptySet(), nearest.getNearestSubsystems(id("x")));
+        Assert.assertEquals(-1, nearest.getDistance(id("x")));
+        Assert.assertEquals(-1, nearest.getDistance(id("unknown")));
+        Assert.assertEquals(createIdSet("x"), new HashSet<>(nearest.getUnownedModules()));
+
+        Map<ModuleIdentifier, Set<ModuleIdentifier>> shared = nearest.getSharedModules();
+        Assert.assertEquals(createIdSet("c"), new HashSet<>(shared.keySet()));
+        Assert.assertEquals(createIdSet("s1", "s2"), new HashSet<>(shared.get(id("c"))));
+
+        Map<ModuleIdentifier, Set<ModuleIdentifier>> owned = nearest.getModulesBySubsystem();
+        Assert.assertEquals(createIdList("s1", "s2"), new ArrayList<>(owned.keySet()));
+        Assert.assertEquals(createIdSet("s1", "a", "d"), new HashSet<>(owned.get(id("s1"))));
+        Assert.assertEquals(createIdSet("s2", "b", "e", "f"), new HashSet<>(owned.get(id("s2"))));
+    }
+
+    @Test
+    public void testNearestSubsystemsSlots() {
+        ModuleGraph graph = new ModuleGraph();
+        ModuleIdentifier main = ModuleIdentifier.create("x", "main");
+        ModuleIdentifier other = ModuleIdentifier.create("x", "other");
+        ModuleIdentifier libMain = ModuleIdentifier.create("lib", "main");
+        ModuleIdentifier libOther = ModuleIdentifier.create("lib", "other");
+        graph.addDependency(main, new ModuleDependency(main, libMain, false));
+        graph.addDependency(other, new ModuleDependency(other, libOther, false));
+        graph.addDependency(other, new ModuleDependency(other, id("shared"), false));
+        graph.addDependency(main, new ModuleDependency(main, id("shared"), false));
+
+        NearestSubsystems nearest = new NearestSubsystems(graph.freeze(), Arrays.asList(main, other));
+        Map<ModuleIdentifier, Set<ModuleIdentifier>> owned = nearest.getModulesBySubsystem();
+        Assert.assertEquals(2, owned.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, libMain)), new HashSet<>(owned.get(main)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(other, libOther)), new HashSet<>(owned.get(other)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, other)), new HashSet<>(nearest.getSharedModules().get(id("shared"))));
+    }
+
+    @Test
+    public void testDominatorTree() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "r", "a");
+        addDependency(graph, "r", "b");
+        addDependency(graph, "a", "c");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "e", "c");//loop
+        addDependency(graph, "d", "f");
+        addDependency(graph, "a", "h");
+        addDependency(graph, "c", "h");
+        addDependency(graph, "x", "f");
+
+        DominatorTree tree = new DominatorTree(graph, id("r"));
+        Assert.assertNull(tree.getImmediateDominator(id("r")));
+        Assert.assertEquals(id("r"), tree.getImmediateDominator(id("a")));
+        Assert.assertEquals(id("r"), tree.getImmediateDominator(id("c")));
+        Assert.assertEquals(id("c"), tree.getImmediateDominator(id("d")));
+        Assert.assertEquals(id("d"), tree.getImmediateDominator(id("e")));
+        Assert.assertEquals(id("d"), tree.getImmediateDominator(id("f")));
+        Assert.assertEquals(id("r"), tree.getImmediateDominator(id("h")));
+        Assert.assertNull(tree.getImmediateDominator(id("x")));
+
+        Assert.assertEquals(createIdList("r", "c", "d", "f"), tree.getDominators(id("f")));
+        Assert.assertEquals(createIdList("r"), tree.getDominators(id("r")));
+        Assert.assertEquals(Collections.emptyList(), tree.getDominators(id("x")));
+        Assert.assertTrue(tree.dominates(id("c"), id("e")));
+        Assert.assertTrue(tree.dominates(id("e"), id("e")));
+        Assert.assertFalse(tree.dominates(id("e"), id("c")));
+        Assert.assertFalse(tree.dominates(id("a"), id("c")));
+        Assert.assertFalse(tree.dominates(id("r"), id("x")));
+        Assert.assertEquals(createIdSet("d", "e", "f"), new HashSet<>(tree.getDominatedModules(id("c"))));
+
+        DominatorTree unknown = new DominatorTree(graph, id("unknown"));
+        Assert.assertNull(unknown.getImmediateDominator(id("a")));
+        Assert.assertFalse(unknown.dominates(id("a"), id("a")));
+    }
+
+    @Test
+    public void testDominatorTreeSlots() {
+        ModuleGraph graph = new ModuleGraph();
+        ModuleIdentifier main = ModuleIdentifier.create("x", "main");
+        ModuleIdentifier other = ModuleIdentifier.create("x", "other");
+        addDependency(graph, "r", "a");
+        graph.addDependency(id("a"), new ModuleDependency(id("a"), main, false));
+        graph.addDependency(id("a"), new ModuleDependency(id("a"), other, false));
+
+        DominatorTree tree = new DominatorTree(graph, id("r"));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, other)), new HashSet<>(tree.getDominatedModules(id("a"))));
+    }
+
+    @Test
+    public void testDominatorTreeAgainstRemoval() {
+        Random random = new Random(13);
+        ModuleGraph graph = new ModuleGraph();
+        for (int i = 0 ; i < 80 ; i++) {
+            addDependency(graph, "m" + random.nextInt(25), "m" + random.nextInt(25));
+        }
+        addDependency(graph, "m0", "m1");
+        FrozenModuleGraph frozen = graph.freeze();
+        DominatorTree tree = new DominatorTree(frozen, id("m0"));
+        ReachabilityIndex reachability = graph.getReachabilityIndex();
+        for (int removed = 1 ; removed < 25 ; removed++) {
+            //Remove a module by leaving out all of its edges, then check what can still be reached
+            ModuleGraph without = new ModuleGraph();
+            for (int node = 0 ; node < frozen.size() ; node++) {
+                for (ModuleDependency dep : frozen.getDependencies(frozen.getModule(node))) {
+                    if (!dep.getFromId().equals(id("m" + removed)) && !dep.getToId().equals(id("m" + removed))) {
+                        without.addDependency(dep.getFromId(), dep);
+                    }
+                }
+            }
+            without.addDependency(id("m0"), dep("m0", "m0"));
+            ReachabilityIndex withoutReachability = without.getReachabilityIndex();
+            for (int i = 0 ; i < 25 ; i++) {
+                if (i == removed || !reachability.reaches(id("m0"), id("m" + i))) {
+                    continue;
+                }
+                boolean dominated = !withoutReachability.reaches(id("m0"), id("m" + i));
+                Assert.assertEquals("m" + removed + " dominates m" + i, dominated, tree.dominates(id("m" + removed), id("m" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void testImpactAnalysis() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "s1", "a");
+        addDependency(graph, "a", "logging");
+        addDependency(graph, "s2", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "logging");
+        addDependency(graph, "s2", "logging");
+        addDependency(graph, "s3", "d");
+        addDependency(graph, "logging", "d");
+
+        ImpactAnalysis analysis = new ImpactAnalysis(graph.freeze(), createIdSet("s1", "s2", "s3"), 2);
+        ImpactAnalysis.Impact impact = analysis.getImpact(id("logging"));
+        Assert.assertSame(impact, analysis.getImpact(id("logging")));
+        Assert.assertEquals(createIdSet("s1", "a", "s2", "b", "c"), new HashSet<>(impact.getAffectedModules()));
+        Assert.assertFalse(impact.isAffected(id("logging")));
+        Assert.assertFalse(impact.isAffected(id("s3")));
+        Assert.assertEquals(createIdList("c", "logging"), impact.getChain(id("c")));
+        Assert.assertEquals(createIdList("b", "c", "logging"), impact.getChain(id("b")));
+        Assert.assertEquals(Collections.emptyList(), impact.getChain(id("d")));
+
+        Map<ModuleIdentifier, List<ModuleIdentifier>> subsystems = impact.getAffectedSubsystems();
+        Assert.assertEquals(createIdList("s1", "s2"), new ArrayList<>(subsystems.keySet()));
+        Assert.assertEquals(createIdList("s1", "a", "logging"), subsystems.get(id("s1")));
+        Assert.assertEquals(createIdList("s2", "logging"), subsystems.get(id("s2")));
+
+        Assert.assertEquals(Collections.emptySet(), analysis.getImpact(id("unknown")).getAffectedModules());
+        Assert.assertEquals(2, analysis.getCachedCount());
+        analysis.getImpact(id("d"));
+        Assert.assertEquals(2, analysis.getCachedCount());
+        Assert.assertNotSame(impact, analysis.getImpact(id("logging")));
+
+        //Affected modules grouped by the subsystems depending on them
+        addDependency(graph, "e", "logging");
+        impact = new ImpactAnalysis(graph.freeze(), createIdSet("s1", "s2", "s3"), 2).getImpact(id("d"));
+        Map<ModuleIdentifier, Set<ModuleIdentifier>> bySubsystem = impact.getAffectedModulesBySubsystem();
+        Assert.assertEquals(createIdList("s1", "s2", "s3"), new ArrayList<>(bySubsystem.keySet()));
+        Assert.assertEquals(createIdSet("a", "logging"), new HashSet<>(bySubsystem.get(id("s1"))));
+        Assert.assertEquals(createIdSet("b", "c", "logging"), new HashSet<>(bySubsystem.get(id("s2"))));
+        Assert.assertEquals(Collections.emptySet(), bySubsystem.get(id("s3")));
+        Assert.assertEquals(createIdSet("e"), new HashSet<>(impact.getAffectedModulesWithoutSubsystem()));
+        Assert.assertEquals(createIdList("e", "logging", "d"), impact.getChain(id("e")));
+    }
+
+    @Test
+    public void testImpactAnalysisSlots() {
+        ModuleGraph graph = new ModuleGraph();
+        ModuleIdentifier main = ModuleIdentifier.create("x", "main");
+        ModuleIdentifier other = ModuleIdentifier.create("x", "other");
+        graph.addDependency(main, new ModuleDependency(main, id("logging"), false));
+        graph.addDependency(other, new ModuleDependency(other, id("logging"), false));
+        graph.addDependency(id("s1"), new ModuleDependency(id("s1"), main, false));
+        graph.addDependency(id("s1"), new ModuleDependency(id("s1"), other, false));
+
+        ImpactAnalysis analysis = new ImpactAnalysis(graph.freeze(), Arrays.asList(main, other), 4);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, other, id("s1"))), new HashSet<>(analysis.getImpact(id("logging")).getAffectedModules()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, other)), analysis.getImpact(id("logging")).getAffectedSubsystems().keySet());
+        Map<ModuleIdentifier, ImpactAnalysis.Impact> impacts = analysis.getImpact(Arrays.asList(main, other));
+        Assert.assertEquals(2, impacts.size());
+        Assert.assertEquals(main, impacts.get(main).getPatchedModule());
+        Assert.assertEquals(other, impacts.get(other).getPatchedModule());
+    }
+
+    @Test
+    public void testShortestPath() {
+        ModuleGraph graph = createAllPathsGraph();
+        Assert.assertEquals(createIdList("a", "i", "z"), graph.shortestPath(id("a"), id("z")));
+        Assert.assertEquals(3, graph.shortestPath(id("a"), id("c")).size());
+        Assert.assertEquals(createIdList("e", "f", "d"), graph.shortestPath(id("e"), id("d")));
+        Assert.assertEquals(createIdList("a"), graph.shortestPath(id("a"), id("a")));
+        Assert.assertEquals(Collections.emptyList(), graph.shortestPath(id("z"), id("a")));
+        Assert.assertEquals(Collections.emptyList(), graph.shortestPath(id("a"), id("unknown")));
+
+        //Compare the path lengths with a full breadth first search, and check the paths are real
+        Random random = new Random(16);
+        ModuleGraph randomGraph = new ModuleGraph();
+        for (int i = 0 ; i < 120 ; i++) {
+            addDependency(randomGraph, "m" + random.nextInt(40), "m" + random.nextInt(40));
+        }
+        for (int from = 0 ; from < 40 ; from++) {
+            DependencyPathBFS bfs = new DependencyPathBFS(randomGraph, id("m" + from));
+            for (int to = 0 ; to < 40 ; to++) {
+                List<ModuleIdentifier> path = randomGraph.shortestPath(id("m" + from), id("m" + to));
+                Assert.assertEquals(bfs.pathTo(id("m" + to)).size(), path.size());
+                for (int i = 1 ; i < path.size() ; i++) {
+                    Assert.assertTrue(randomGraph.getDependencies(path.get(i - 1)).contains(new ModuleDependency(path.get(i - 1), path.get(i), false)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKShortestDependencyPaths() {
+        ModuleGraph graph = createAllPathsGraph();
+        KShortestDependencyPaths paths = new KShortestDependencyPaths(graph, id("a"), id("z"), 2, false);
+        Assert.assertEquals(Arrays.asList(createIdList("a", "i", "z"), createIdList("a", "j", "k", "z")), paths.getPaths());
+        paths = new KShortestDependencyPaths(graph, id("a"), id("z"), 10, false);
+        Assert.assertEquals(4, paths.getPaths().size());
+        Assert.assertEquals(new HashSet<>(new AllDependencyPathsDFS(graph, id("a"), id("z")).pathsTo()), new HashSet<>(paths.getPaths()));
+        Assert.assertEquals(Collections.singletonList(createIdList("a")), new KShortestDependencyPaths(graph, id("a"), id("a"), 3, false).getPaths());
+        Assert.assertEquals(Collections.emptyList(), new KShortestDependencyPaths(graph, id("z"), id("a"), 3, false).getPaths());
+
+        graph = new ModuleGraph();
+        graph.addDependency(id("s"), new ModuleDependency(id("s"), id("o"), true));
+        addDependency(graph, "o", "t");
+        addDependency(graph, "s", "a");
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "t");
+        Assert.assertEquals(createIdList("s", "o", "t"), new KShortestDependencyPaths(graph, id("s"), id("t"), 1, false).getPaths().get(0));
+        paths = new KShortestDependencyPaths(graph, id("s"), id("t"), 2, true);
+        Assert.assertEquals(Arrays.asList(createIdList("s", "a", "b", "t"), createIdList("s", "o", "t")), paths.getPaths());
+        Assert.assertTrue(paths.getDependencyPaths().get(1).get(0).isOptional());
+
+        //With a large enough k every loopless path is found, shortest first
+        Random random = new Random(17);
+        graph = new ModuleGraph();
+        for (int i = 0 ; i < 45 ; i++) {
+            addDependency(graph, "m" + random.nextInt(15), "m" + random.nextInt(15));
+        }
+        for (int to = 1 ; to < 15 ; to++) {
+            List<List<ModuleIdentifier>> found = new KShortestDependencyPaths(graph, id("m0"), id("m" + to), 100000, false).getPaths();
+            Assert.assertEquals(new HashSet<>(new AllDependencyPathsDFS(graph, id("m0"), id("m" + to)).pathsTo()), new HashSet<>(found));
+            Assert.assertEquals(found.size(), new HashSet<>(found).size());
+            for (int i = 1 ; i < found.size() ; i++) {
+                Assert.assertTrue(found.get(i - 1).size() <= found.get(i).size());
+            }
+        }
+    }
+
+    @Test
+    public void testDependencyClosure() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "r", "a");
+        graph.addDependency(id("r"), new ModuleDependency(id("r"), id("o"), true));
+        addDependency(graph, "o", "b");
+        addDependency(graph, "o", "x");
+        addDependency(graph, "a", "c");
+        addDependency(graph, "c", "x");
+        graph.addDependency(id("a"), new ModuleDependency(id("a"), id("d"), true));
+        addDependency(graph, "d", "b");
+        addDependency(graph, "u", "r");
+
+        DependencyClosure closure = new DependencyClosure(graph, id("r"));
+        Assert.assertEquals(DependencyClosure.Reachability.MANDATORY, closure.getReachability(id("r")));
+        Assert.assertEquals(DependencyClosure.Reachability.MANDATORY, closure.getReachability(id("x")));
+        Assert.assertEquals(DependencyClosure.Reachability.OPTIONAL, closure.getReachability(id("o")));
+        Assert.assertEquals(DependencyClosure.Reachability.OPTIONAL, closure.getReachability(id("b")));
+        Assert.assertEquals(DependencyClosure.Reachability.UNREACHABLE, closure.getReachability(id("u")));
+        Assert.assertEquals(createIdSet("r", "a", "c", "x"), closure.getMandatoryModules());
+        Assert.assertEquals(createIdSet("o", "b", "d"), closure.getOptionalModules());
+
+        //x is reached through the optional o first, but gets a path of non-optional dependencies
+        Assert.assertEquals(createIdList("r", "a", "c", "x"), closure.pathTo(id("x")));
+        Assert.assertEquals(createIdList("r", "o", "b"), closure.pathTo(id("b")));
+        Assert.assertEquals(Collections.emptyList(), closure.pathTo(id("u")));
+
+        //Check against separate searches of all the dependencies and of the non-optional ones only
+        Random random = new Random(18);
+        graph = new ModuleGraph();
+        ModuleGraph mandatoryGraph = new ModuleGraph();
+        for (int i = 0 ; i < 60 ; i++) {
+            ModuleDependency dep = new ModuleDependency(id("m" + random.nextInt(30)), id("m" + random.nextInt(30)), random.nextInt(3) == 0);
+            if (graph.getDependencies(dep.getFromId()).contains(dep)) {
+                continue;
+            }
+            graph.addDependency(dep.getFromId(), dep);
+            if (!dep.isOptional()) {
+                mandatoryGraph.addDependency(dep.getFromId(), dep);
+            }
+        }
+        closure = new DependencyClosure(graph, id("m0"));
+        Set<ModuleIdentifier> all = new DependencyPathBFS(graph, id("m0")).getAllModules();
+        Set<ModuleIdentifier> mandatory = new DependencyPathBFS(mandatoryGraph, id("m0")).getAllModules();
+        Assert.assertEquals(mandatory, closure.getMandatoryModules());
+        Set<ModuleIdentifier> optional = new HashSet<>(all);
+        optional.removeAll(mandatory);
+        Assert.assertEquals(optional, closure.getOptionalModules());
+    }
+
+    @Test
+    public void testSubsystemClosureMatrix() throws Exception {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "s1", "a");
+        addDependency(graph, "a", "s2");
+        addDependency(graph, "s2", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "b");//loop
+        addDependency(graph, "s1", "core");
+
+        SubsystemClosureMatrix matrix = new SubsystemClosureMatrix(graph, createIdSet("s1", "s2"));
+        Assert.assertEquals(createIdSet("s1", "s2"), new HashSet<>(matrix.getReachingSubsystems(id("c"))));
+        Assert.assertEquals(createIdSet("s2"), new HashSet<>(matrix.getReachedSubsystems(id("a"))));
+        Assert.assertEquals(createIdSet("s1", "s2"), new HashSet<>(matrix.getReachedSubsystems(id("s1"))));
+
+        matrix = new SubsystemClosureMatrix(graph.freeze(), createIdSet("s1", "s2"), createIdSet("s1", "s2"), createIdSet("core"));
+        Assert.assertEquals(createIdSet("s1", "a", "s2"), new HashSet<>(matrix.getModulesReachedBy(id("s1"))));
+        Assert.assertEquals(createIdSet("s2", "b", "c"), new HashSet<>(matrix.getModulesReachedBy(id("s2"))));
+        Assert.assertEquals(createIdSet("s2"), new HashSet<>(matrix.getReachingSubsystems(id("c"))));
+        Assert.assertEquals(createIdSet("s2"), new HashSet<>(matrix.getReachedSubsystems(id("a"))));
+        Assert.assertEquals(createIdSet("s1", "s2"), new HashSet<>(matrix.getReachedSubsystems(id("s1"))));
+        Assert.assertEquals(Collections.emptySet(), matrix.getReachingSubsystems(id("core")));
+
+        StringWriter csv = new StringWriter();
+        matrix.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        Assert.assertEquals("module,s1:main,s2:main,reached-by,reaches", lines[0]);
+        Assert.assertEquals("a:main,1,0,1,1", lines[1]);
+        Assert.assertEquals(7, lines.length);
+
+        //Check against searches from each subsystem which stop at the other subsystems and skip the excluded modules
+        Random random = new Random(20);
+        graph = new ModuleGraph();
+        for (int i = 0 ; i < 150 ; i++) {
+            addDependency(graph, "m" + random.nextInt(60), "m" + random.nextInt(60));
+        }
+        final Set<ModuleIdentifier> subsystems = new HashSet<>();
+        final Set<ModuleIdentifier> excluded = new HashSet<>();
+        for (int i = 0 ; i < 60 ; i++) {
+            if (i % 5 == 0) {
+                subsystems.add(id("m" + i));
+            } else if (i % 7 == 0) {
+                excluded.add(id("m" + i));
+            }
+        }
+        matrix = new SubsystemClosureMatrix(graph.freeze(), subsystems, subsystems, excluded);
+        for (final ModuleIdentifier subsystem : subsystems) {
+            DependencyPathDFS dfs = new DependencyPathDFS(graph, subsystem, new EndSearchCondition() {
+                @Override
+                public boolean endSearch(ModuleIdentifier id, ModuleDependency dep) {
+                    return (subsystems.contains(id) && !subsystem.equals(id)) || excluded.contains(dep.getToId());
+                }
+            });
+            Assert.assertEquals(new HashSet<>(dfs.getAllModules()), new HashSet<>(matrix.getModulesReachedBy(subsystem)));
+            for (ModuleIdentifier other : subsystems) {
+                Assert.assertEquals(dfs.isCoreDependency(other), matrix.getReachedSubsystems(subsystem).contains(other));
+            }
+        }
+    }
+
+    @Test
+    public void testSubsystemClosureMatrixSlots() {
+        //Two slots of a subsystem get a bit each
+        ModuleGraph graph = new ModuleGraph();
+        ModuleIdentifier main = ModuleIdentifier.create("x", "main");
+        ModuleIdentifier other = ModuleIdentifier.create("x", "other");
+        graph.addDependency(main, new ModuleDependency(main, id("a"), false));
+        graph.addDependency(other, new ModuleDependency(other, id("b"), false));
+        addDependency(graph, "a", "b");
+        Set<ModuleIdentifier> slots = new HashSet<>(Arrays.asList(main, other));
+        SubsystemClosureMatrix matrix = new SubsystemClosureMatrix(graph.freeze(), slots, slots, Collections.<ModuleIdentifier>emptySet());
+        Assert.assertEquals(2, matrix.getSubsystems().size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(main, id("a"), id("b"))), new HashSet<>(matrix.getModulesReachedBy(main)));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(other, id("b"))), new HashSet<>(matrix.getModulesReachedBy(other)));
+        Assert.assertEquals(slots, new HashSet<>(matrix.getReachingSubsystems(id("b"))));
+    }
+
+    @Test
+    public void testStopCondition() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "d");
+        graph.addDependency(id("a"), new ModuleDependency(id("a"), id("o"), true));
+        addDependency(graph, "o", "p");
+        addDependency(graph, "a", "x");
+        addDependency(graph, "x", "y");
+
+        Assert.assertEquals(createIdSet("a", "b", "c", "d", "o", "p", "x", "y"), new DependencyPathDFS(graph, id("a"), StopCondition.NEVER).getAllModules());
+        Assert.assertEquals(createIdSet("a", "b", "c", "d", "x", "y"), new DependencyPathDFS(graph, id("a"), StopCondition.optional()).getAllModules());
+        Assert.assertEquals(createIdSet("a", "b", "o", "x"), new DependencyPathDFS(graph, id("a"), StopCondition.depth(1)).getAllModules());
+        Assert.assertEquals(createIdSet("a"), new DependencyPathDFS(graph, id("a"), StopCondition.depth(0)).getAllModules());
+        Assert.assertEquals(createIdSet("a", "b", "c", "o", "p", "x"), new DependencyPathDFS(graph, id("a"), StopCondition.at(createIdSet("c", "x"))).getAllModules());
+        Assert.assertEquals(createIdSet("a", "b", "o", "p", "x", "y"), new DependencyPathDFS(graph, id("a"), StopCondition.before(createIdSet("c"))).getAllModules());
+        Assert.assertEquals(createIdSet("a"), new DependencyPathDFS(graph, id("a"), StopCondition.at(id("a"))).getAllModules());
+
+        //Stop at b and x, but not at the root
+        StopCondition condition = StopCondition.at(createIdSet("a", "b", "x")).and(StopCondition.at(id("a")).not());
+        Assert.assertEquals(createIdSet("a", "b", "o", "p", "x"), new DependencyPathDFS(graph, id("a"), condition).getAllModules());
+        condition = StopCondition.optional().or(StopCondition.depth(2));
+        Assert.assertEquals(createIdSet("a", "b", "c", "x", "y"), new DependencyPathDFS(graph, id("a"), condition).getAllModules());
+
+        //The adapter gives the same result as the compiled condition
+        EndSearchCondition endSearchCondition = new EndSearchCondition() {
+            @Override
+            public boolean endSearch(ModuleIdentifier id, ModuleDependency dep) {
+                return dep.isOptional() || dep.getToId().equals(id("c"));
+            }
+        };
+        Assert.assertEquals(new DependencyPathDFS(graph, id("a"), StopCondition.optional().or(StopCondition.before(createIdSet("c")))).getAllModules(),
+                new DependencyPathDFS(graph, id("a"), endSearchCondition).getAllModules());
+    }
+
+    @Test
+    public void testLoadOrder() {
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "r", "a");
+        addDependency(graph, "r", "b");
+        addDependency(graph, "a", "f");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "d");
+        addDependency(graph, "d", "c");//loop
+        addDependency(graph, "d", "f");
+        addDependency(graph, "x", "r");
+
+        LoadOrder order = new LoadOrder(graph, id("r"), null);
+        Assert.assertEquals(4, order.getLevelCount());
+        Assert.assertEquals(Arrays.asList(createIdSet("f"), createIdSet("a", "c", "d"), createIdSet("b"), createIdSet("r")), order.getLevels());
+        Assert.assertEquals(1, order.getLevelWidth(0));
+        Assert.assertEquals(2, order.getLevelWidth(1));
+        Assert.assertEquals(1, order.getLevelWidth(3));
+        Assert.assertEquals(1, order.getLevel(id("d")));
+        Assert.assertEquals(-1, order.getLevel(id("x")));
+        Assert.assertEquals(Arrays.asList(createIdSet("r"), createIdSet("b"), createIdSet("c", "d"), createIdSet("f")), order.getCriticalPath());
+        Assert.assertEquals(5, order.getCriticalPathWeight());
+
+        //Weighing a heavily makes it the critical path, without changing the levels
+        Map<ModuleIdentifier, Long> weights = new HashMap<>();
+        weights.put(id("r"), 1L);
+        weights.put(id("a"), 100L);
+        weights.put(id("b"), 1L);
+        weights.put(id("c"), 1L);
+        weights.put(id("f"), 10L);
+        order = new LoadOrder(graph, id("r"), weights);
+        Assert.assertEquals(Arrays.asList(createIdSet("r"), createIdSet("a"), createIdSet("f")), order.getCriticalPath());
+        Assert.assertEquals(111, order.getCriticalPathWeight());
+        Assert.assertEquals(4, order.getLevelCount());
+
+        order = new LoadOrder(graph, id("unknown"), null);
+        Assert.assertEquals(0, order.getLevelCount());
+        Assert.assertEquals(Collections.emptyList(), order.getCriticalPath());
+        Assert.assertEquals(-1, order.getLevel(id("r")));
+    }
+
+    @Test
+    public void testStopConditionDepthShorterPath() {
+        //Whichever way the search goes first, d is two dependencies away through c
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "a", "c");
+
+        DependencyPathDFS search = new DependencyPathDFS(graph, id("a"), StopCondition.depth(2));
+        Assert.assertEquals(createIdSet("a", "b", "c", "d"), search.getAllModules());
+        Assert.assertEquals(createIdList("a", "c", "d"), search.simplePathTo(id("d")));
+        search = new DependencyPathDFS(graph, id("a"), StopCondition.depth(2).or(StopCondition.before(createIdSet("b"))));
+        Assert.assertEquals(createIdSet("a", "c", "d"), search.getAllModules());
+        Assert.assertEquals(createIdSet("a", "b", "c", "d", "e"), new DependencyPathDFS(graph, id("a"), StopCondition.depth(3)).getAllModules());
+    }
+
+    @Test
+    public void testStopConditionBeforeRecordsParents() {
+        //s is refused from c while searching through b, and then from a, which the search meets last
+        ModuleGraph graph = new ModuleGraph();
+        addDependency(graph, "a", "s");
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+        addDependency(graph, "c", "s");
+        addDependency(graph, "c", "t");
+        addDependency(graph, "s", "x");
+
+        Map<ModuleIdentifier, ModuleIdentifier> refused = new HashMap<>();
+        DependencyPathDFS search = new DependencyPathDFS(graph, id("a"), StopCondition.before(createIdSet("s", "t"), refused));
+        Assert.assertEquals(createIdSet("a", "b", "c"), search.getAllModules());
+        Assert.assertEquals(2, refused.size());
+        Assert.assertEquals(id("a"), refused.get(id("s")));
+        Assert.assertEquals(id("c"), refused.get(id("t")));
+    }
+
+    private ModuleGraph createAllPathsGraph() {
+        ModuleGraph graph = new ModuleGraph();
+
+        /*
+         *
+         *   ->b->c<------------
+         *  /         ->g->     |
+         * |         /     \    ^
+         * a->d->e->f       z   |
+         * | |      |\     /|   |
+         * | -<-----  ->h-> ^   |
+         * |                |   |
+         *  ->-----i---->---^   |
+         * |                |   |
+         *  ->-j----->k---->    |
+         * |                    |
+         *  ---------l--------->
+        */
+
+        addDependency(graph, "a", "b");
+        addDependency(graph, "b", "c");
+
+        addDependency(graph, "a", "d");
+        addDependency(graph, "d", "e");
+        addDependency(graph, "e", "f");
+        addDependency(graph, "f", "g");
+        addDependency(graph, "g", "z");
+        addDependency(graph, "f", "h");
+        addDependency(graph, "h", "z");
+        addDependency(graph, "f", "d");//loop
+
+        addDependency(graph, "a", "i");
+        addDependency(graph, "i", "z");
+
+        addDependency(graph, "a", "j");
+        addDependency(graph, "j", "k");
+        addDependency(graph, "k", "z");
+
+        addDependency(graph, "a", "l");
+        addDependency(graph, "l", "c");
+        return graph;
+    }
+
+    private void checkDeps(Set<ModuleDependency> expected, Set<ModuleDependency> actual) {
+        Assert.assertEquals(expected, actual);
+        Set<String> expectedStrings = new HashSet<>();
+        for (ModuleDependency dep : expected) {
+            expectedStrings.add(dep.toString());
+        }
+        Set<String> actualStrings = new HashSet<>();
+        for (ModuleDependency dep : actual) {
+            actualStrings.add(dep.toString());
+        }
+        Assert.assertEquals(expectedStrings, actualStrings);
+    }
+
     private void checkDeps(ModuleGraph graph, String from, ModuleDependency...expectedDeps){
         Set<ModuleDependency> deps = graph.getDependencies(id(from));
         Assert.assertEquals(deps, createDepSet(expectedDeps));
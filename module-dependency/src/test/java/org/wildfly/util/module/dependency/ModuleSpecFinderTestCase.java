@@ -0,0 +1,484 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2011, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.wildfly.util.module.dependency;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.modules.ModuleIdentifier;
+import org.jboss.modules.ModuleLoadException;
+import org.jboss.modules.ModuleSpec;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ModuleSpecFinderTestCase {
+
+    private File root;
+
+    @Before
+    public void createModulesRoot() throws IOException {
+        root = Files.createTempDirectory("modules").toFile();
+    }
+
+    @After
+    public void deleteModulesRoot() {
+        delete(root);
+    }
+
+    @Test
+    public void testParallelScan() throws Exception {
+        Map<ModuleIdentifier, Set<ModuleDependency>> expected = createModuleTree();
+        checkModules(expected, ModuleSpecFinder.Factory.create(root).findAllModules());
+        checkModules(expected, ModuleSpecFinder.Factory.create(root, 4).findAllModules());
+    }
+
+    @Test
+    public void testStreamingParser() throws Exception {
+        Map<ModuleIdentifier, Set<ModuleDependency>> expected = createModuleTree();
+        addAlias("org.jboss.as.jmx", "alias", "org.jboss.as.jmx");
+        expected.put(ModuleIdentifier.create("org.jboss.as.jmx", "alias"), createDepSet());
+
+        Map<ModuleIdentifier, Set<ModuleDependency>> jbossModules = ModuleSpecFinder.Factory.create(root).findAllModules();
+        checkModules(expected, jbossModules);
+        checkModules(jbossModules, ModuleSpecFinder.Factory.createStreaming(root, 1).findAllModules());
+        checkModules(jbossModules, ModuleSpecFinder.Factory.createStreaming(root, 4).findAllModules());
+
+        ModuleSpecFinder finder = ModuleSpecFinder.Factory.createStreaming(root, 1);
+        Assert.assertEquals(expected.get(id("org.jboss.as.server")),
+                finder.getModuleDependencies(finder.findModule(id("org.jboss.as.server"))));
+    }
+
+    @Test(expected = ModuleLoadException.class)
+    public void testStreamingParserNameMismatch() throws Exception {
+        writeModule(moduleDir("org.jboss.as.wrong", "main"), "org.jboss.as.server", "main");
+        ModuleSpecFinder.Factory.createStreaming(root, 1).findAllModules();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Map<ModuleIdentifier, Set<ModuleDependency>> expected = createModuleTree();
+        File snapshot = new File(root, "modules.snapshot");
+
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.create(root), snapshot).findAllModules());
+        Assert.assertTrue(snapshot.exists());
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.create(root, 4), snapshot).findAllModules());
+
+        //Same size and timestamp, so the snapshot should be used rather than the file
+        File dmrXml = new File(moduleDir("org.jboss.dmr", "main"), "module.xml");
+        long lastModified = dmrXml.lastModified();
+        long length = dmrXml.length();
+        delete(moduleDir("org.jboss.dmr", "main"));
+        addModule("org.jboss.dmr", "main", "org.jboss.as.ejb3");
+        Assert.assertEquals(length, dmrXml.length());
+        Assert.assertTrue(dmrXml.setLastModified(lastModified));
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.create(root), snapshot).findAllModules());
+
+        //Changed, added and removed modules
+        Assert.assertTrue(dmrXml.setLastModified(lastModified - 10000));
+        expected.put(id("org.jboss.dmr"), createDepSet(dep("org.jboss.dmr", "org.jboss.as.ejb3", false)));
+        addModule("org.jboss.threads", "main", "?org.jboss.logging");
+        expected.put(id("org.jboss.threads"), createDepSet(dep("org.jboss.threads", "org.jboss.logging", true)));
+        delete(moduleDir("org.jboss.as.jmx", "other"));
+        expected.remove(ModuleIdentifier.create("org.jboss.as.jmx", "other"));
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.createStreaming(root, 1), snapshot).findAllModules());
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.create(root), snapshot).findAllModules());
+        checkModules(expected, ModuleSpecFinder.Factory.create(root).findAllModules());
+    }
+
+    @Test
+    public void testSnapshotModuleMissedByScan() throws Exception {
+        Map<ModuleIdentifier, Set<ModuleDependency>> expected = createModuleTree();
+        final AbstractModuleSpecFinder streaming = (AbstractModuleSpecFinder)ModuleSpecFinder.Factory.createStreaming(root, 1);
+        //A scan which misses a module, as if its module.xml was written after the scan
+        AbstractModuleSpecFinder missing = new AbstractModuleSpecFinder(root, 1) {
+            @Override
+            public Map<ModuleIdentifier, Set<ModuleDependency>> findAllModules() throws ModuleLoadException {
+                Map<ModuleIdentifier, Set<ModuleDependency>> modules = new HashMap<>(streaming.findAllModules());
+                modules.remove(id("org.jboss.dmr"));
+                return modules;
+            }
+
+            @Override
+            public ModuleSpec findModule(ModuleIdentifier moduleId) throws ModuleLoadException {
+                return streaming.findModule(moduleId);
+            }
+
+            @Override
+            Set<ModuleDependency> loadDependencies(ModuleIdentifier identifier, File moduleXml) throws ModuleLoadException {
+                return streaming.loadDependencies(identifier, moduleXml);
+            }
+        };
+        File snapshot = new File(root, "modules.snapshot");
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(missing, snapshot).findAllModules());
+        checkModules(expected, ModuleSpecFinder.Factory.createCached(streaming, snapshot).findAllModules());
+    }
+
+    @Test
+    public void testProvisioning() throws Exception {
+        createModuleTree();
+        addModule("org.jboss.as.ejb3", "main", "org.jboss.as.server", "org.missing");
+        Files.write(new File(moduleDir("org.jboss.as.controller", "main"), "controller.jar").toPath(), new byte[1000]);
+        ModuleGraph graph = new ModuleGraph(ModuleSpecFinder.Factory.create(root));
+
+        ProvisioningCalculator calculator = new ProvisioningCalculator(graph, root, false);
+        ProvisioningCalculator.Provisioning provisioning = calculator.calculate(Collections.singleton(id("org.jboss.as.server")));
+        Assert.assertEquals(createIdSet("org.jboss.as.server", "org.jboss.as.controller", "org.jboss.logging", "org.jboss.dmr"),
+                new HashSet<>(provisioning.getKeptModules()));
+        Set<ModuleIdentifier> deleted = createIdSet("org.jboss.as.jmx", "org.jboss.as.ejb3");
+        deleted.add(ModuleIdentifier.create("org.jboss.as.jmx", "other"));
+        Assert.assertEquals(deleted, new HashSet<>(provisioning.getDeletedModules()));
+        Assert.assertTrue(provisioning.getKeptDirectories().contains(moduleDir("org.jboss.as.controller", "main")));
+        Assert.assertTrue(provisioning.getDeletedDirectories().contains(moduleDir("org.jboss.as.jmx", "other")));
+        Assert.assertEquals(Collections.emptySet(), provisioning.getMissingModules());
+
+        long kept = 1000;
+        for (File dir : provisioning.getKeptDirectories()) {
+            kept += new File(dir, "module.xml").length();
+        }
+        long deletedBytes = 0;
+        for (File dir : provisioning.getDeletedDirectories()) {
+            deletedBytes += new File(dir, "module.xml").length();
+        }
+        Assert.assertEquals(kept, provisioning.getKeptBytes());
+        Assert.assertEquals(deletedBytes, provisioning.getDeletedBytes());
+
+        provisioning = new ProvisioningCalculator(graph, root, true).calculate(Collections.singleton(id("org.jboss.as.server")));
+        Assert.assertTrue(provisioning.getKeptModules().contains(id("org.jboss.as.jmx")));
+        Assert.assertFalse(provisioning.getKeptModules().contains(ModuleIdentifier.create("org.jboss.as.jmx", "other")));
+
+        provisioning = calculator.calculate(Collections.singleton(id("org.jboss.as.ejb3")));
+        Assert.assertEquals(createIdSet("org.missing"), new HashSet<>(provisioning.getMissingModules()));
+        deleted = createIdSet("org.jboss.as.jmx");
+        deleted.add(ModuleIdentifier.create("org.jboss.as.jmx", "other"));
+        Assert.assertEquals(deleted, new HashSet<>(provisioning.getDeletedModules()));
+    }
+
+    @Test
+    public void testResourceSizes() throws Exception {
+        createModuleTree();
+        addResourceRoots("org.jboss.as.server", "main", "server.jar");
+        addResourceRoots("org.jboss.as.controller", "main", "controller.jar", "missing.jar");
+        addResourceRoots("org.jboss.dmr", "main", "dmr.jar", "classes");
+        File serverDir = moduleDir("org.jboss.as.server", "main");
+        File dmrDir = moduleDir("org.jboss.dmr", "main");
+        Files.write(new File(serverDir, "server.jar").toPath(), new byte[10]);
+        Files.write(new File(moduleDir("org.jboss.as.controller", "main"), "controller.jar").toPath(), new byte[1000]);
+        Files.write(new File(dmrDir, "dmr.jar").toPath(), new byte[200]);
+        Assert.assertTrue(new File(dmrDir, "classes/org/jboss").mkdirs());
+        Files.write(new File(dmrDir, "classes/org/jboss/Dmr.class").toPath(), new byte[30]);
+        Files.write(new File(dmrDir, "classes/Other.class").toPath(), new byte[20]);
+        //Not listed in the module.xml
+        Files.write(new File(serverDir, "unused.jar").toPath(), new byte[5000]);
+
+        Assert.assertEquals(Arrays.asList("controller.jar", "missing.jar"),
+                ModuleXmlParser.parseResourceRoots(id("org.jboss.as.controller"), new File(moduleDir("org.jboss.as.controller", "main"), "module.xml")));
+
+        Map<ModuleIdentifier, Long> expected = new HashMap<>();
+        expected.put(id("org.jboss.as.server"), 10L);
+        expected.put(id("org.jboss.as.controller"), 1000L);
+        expected.put(id("org.jboss.logging"), 0L);
+        expected.put(id("org.jboss.dmr"), 250L);
+        expected.put(id("org.jboss.as.jmx"), 0L);
+        expected.put(ModuleIdentifier.create("org.jboss.as.jmx", "other"), 0L);
+        ModuleSpecFinder finder = ModuleSpecFinder.Factory.createStreaming(root, 1);
+        Assert.assertEquals(expected, finder.findResourceSizes());
+        Assert.assertSame(finder.findResourceSizes(), finder.findResourceSizes());
+        Assert.assertEquals(expected, ModuleSpecFinder.Factory.createStreaming(root, 4).findResourceSizes());
+        Assert.assertEquals(expected, ModuleSpecFinder.Factory.createCached(ModuleSpecFinder.Factory.createStreaming(root, 4), new File(root, "modules.snapshot")).findResourceSizes());
+
+        //jmx only reaches the dependencies it shares with the server, which also reaches jmx as an optional dependency
+        ModuleGraph graph = new ModuleGraph(finder);
+        Set<ModuleIdentifier> subsystems = createIdSet("org.jboss.as.server", "org.jboss.as.jmx");
+        SubsystemClosureMatrix matrix = new SubsystemClosureMatrix(graph.freeze(), subsystems, subsystems, Collections.<ModuleIdentifier>emptySet());
+        SubsystemFootprint footprint = new SubsystemFootprint(matrix, finder.findResourceSizes());
+        Assert.assertEquals(1260, footprint.getTotalBytes());
+        SubsystemFootprint.Footprint server = footprint.getFootprint(id("org.jboss.as.server"));
+        Assert.assertEquals(10, server.getExclusiveBytes());
+        Assert.assertEquals(1250, server.getSharedBytes());
+        Assert.assertEquals(1260, server.getTotalBytes());
+        Assert.assertEquals(5, server.getModuleCount());
+        SubsystemFootprint.Footprint jmx = footprint.getFootprint(id("org.jboss.as.jmx"));
+        Assert.assertEquals(0, jmx.getExclusiveBytes());
+        Assert.assertEquals(1250, jmx.getSharedBytes());
+        Assert.assertEquals(4, jmx.getModuleCount());
+        Assert.assertEquals(Arrays.asList(server, jmx), footprint.getFootprints());
+        Assert.assertNull(footprint.getFootprint(id("org.jboss.dmr")));
+    }
+
+    @Test
+    public void testUnusedDependencies() throws Exception {
+        createModuleTree();
+        addResourceRoots("org.jboss.as.server", "main", "server.jar");
+        addResourceRoots("org.jboss.as.controller", "main", "controller.jar");
+        addResourceRoots("org.jboss.logging", "main", "logging.jar");
+        addResourceRoots("org.jboss.dmr", "main", "classes");
+        writeJar(new File(moduleDir("org.jboss.as.server", "main"), "server.jar"), "org/jboss/as/server/Server.class",
+                classFile("org/jboss/as/server/Server", "org/jboss/as/controller/Controller", "(Lorg/jboss/logging/Logger;J)V"));
+        writeJar(new File(moduleDir("org.jboss.as.controller", "main"), "controller.jar"), "org/jboss/as/controller/Controller.class",
+                classFile("org/jboss/as/controller/Controller", "[Lorg/jboss/dmr/ModelNode;"));
+        File loggingJar = new File(moduleDir("org.jboss.logging", "main"), "logging.jar");
+        writeJar(loggingJar, "org/jboss/logging/Logger.class", classFile("org/jboss/logging/Logger", "java/lang/Object"));
+        File dmrClasses = new File(moduleDir("org.jboss.dmr", "main"), "classes/org/jboss/dmr");
+        Assert.assertTrue(dmrClasses.mkdirs());
+        Files.write(new File(dmrClasses, "ModelNode.class").toPath(), classFile("org/jboss/dmr/ModelNode", "java/lang/String"));
+        ModuleGraph graph = new ModuleGraph(ModuleSpecFinder.Factory.createStreaming(root, 1));
+        File cache = new File(root, "packages.cache");
+
+        //jmx has no classes so the optional dependency on it is not judged
+        List<ModuleDependency> expected = Arrays.asList(dep("org.jboss.as.controller", "org.jboss.logging", false), dep("org.jboss.dmr", "org.jboss.logging", false));
+        PackageIndex index = new PackageIndex(cache);
+        UnusedDependencyDetector detector = new UnusedDependencyDetector(graph, root, index, 4);
+        index.store();
+        Assert.assertEquals(3, index.getScannedCount());
+        Assert.assertEquals(expected, detector.getUnusedDependencies());
+        Assert.assertEquals(createStringSet("org.jboss.as.controller"), detector.getUsedPackages(dep("org.jboss.as.server", "org.jboss.as.controller", false)));
+        Assert.assertEquals(createStringSet("org.jboss.logging"), detector.getUsedPackages(dep("org.jboss.as.server", "org.jboss.logging", false)));
+        Assert.assertEquals(createStringSet("org.jboss.dmr"), detector.getPackages(id("org.jboss.dmr")));
+        Assert.assertEquals(createStringSet("org.jboss.as.controller", "org.jboss.dmr"), detector.getReferencedPackages(id("org.jboss.as.controller")));
+        Assert.assertEquals(Collections.emptySet(), detector.getPackages(id("org.jboss.as.jmx")));
+
+        //Only the changed jar gets scanned again
+        index = new PackageIndex(cache);
+        Assert.assertEquals(expected, new UnusedDependencyDetector(graph, root, index, 1).getUnusedDependencies());
+        Assert.assertEquals(0, index.getScannedCount());
+        index.store();
+        writeJar(loggingJar, "org/jboss/logging/Logger.class", classFile("org/jboss/logging/Logger", "org/jboss/dmr/ModelNode"));
+        Assert.assertTrue(loggingJar.setLastModified(loggingJar.lastModified() - 10000));
+        index = new PackageIndex(cache);
+        detector = new UnusedDependencyDetector(graph, root, index, 1);
+        Assert.assertEquals(1, index.getScannedCount());
+        Assert.assertEquals(createStringSet("org.jboss.dmr", "org.jboss.logging"), detector.getReferencedPackages(id("org.jboss.logging")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadParallelism() throws Exception {
+        ModuleSpecFinder.Factory.create(root, 0);
+    }
+
+    private Map<ModuleIdentifier, Set<ModuleDependency>> createModuleTree() throws IOException {
+        addModule("org.jboss.as.server", "main", "org.jboss.as.controller", "org.jboss.logging", "?org.jboss.as.jmx");
+        addModule("org.jboss.as.controller", "main", "org.jboss.logging", "org.jboss.dmr");
+        addModule("org.jboss.logging", "main");
+        addModule("org.jboss.dmr", "main", "org.jboss.logging");
+        addModule("org.jboss.as.jmx", "main", "org.jboss.as.controller");
+        addModule("org.jboss.as.jmx", "other", "org.jboss.as.server");
+
+        Map<ModuleIdentifier, Set<ModuleDependency>> expected = new HashMap<>();
+        expected.put(id("org.jboss.as.server"),
+                createDepSet(dep("org.jboss.as.server", "org.jboss.as.controller", false),
+                        dep("org.jboss.as.server", "org.jboss.logging", false),
+                        dep("org.jboss.as.server", "org.jboss.as.jmx", true)));
+        expected.put(id("org.jboss.as.controller"),
+                createDepSet(dep("org.jboss.as.controller", "org.jboss.logging", false),
+                        dep("org.jboss.as.controller", "org.jboss.dmr", false)));
+        expected.put(id("org.jboss.logging"), createDepSet());
+        expected.put(id("org.jboss.dmr"), createDepSet(dep("org.jboss.dmr", "org.jboss.logging", false)));
+        expected.put(id("org.jboss.as.jmx"), createDepSet(dep("org.jboss.as.jmx", "org.jboss.as.controller", false)));
+        expected.put(ModuleIdentifier.create("org.jboss.as.jmx", "other"),
+                createDepSet(new ModuleDependency(ModuleIdentifier.create("org.jboss.as.jmx", "other"), id("org.jboss.as.server"), false)));
+        return expected;
+    }
+
+    /**
+     * Checks the modules and their dependencies, including the optional flag which {@link ModuleDependency#equals(Object)}
+     * ignores.
+     */
+    private void checkModules(Map<ModuleIdentifier, Set<ModuleDependency>> expected, Map<ModuleIdentifier, Set<ModuleDependency>> actual) {
+        Assert.assertEquals(expected, actual);
+        for (Map.Entry<ModuleIdentifier, Set<ModuleDependency>> entry : expected.entrySet()) {
+            Set<String> expectedDeps = new HashSet<>();
+            for (ModuleDependency dep : entry.getValue()) {
+                expectedDeps.add(dep.toString());
+            }
+            Set<String> actualDeps = new HashSet<>();
+            for (ModuleDependency dep : actual.get(entry.getKey())) {
+                actualDeps.add(dep.toString());
+            }
+            Assert.assertEquals(expectedDeps, actualDeps);
+        }
+    }
+
+    private void addAlias(String name, String slot, String target) throws IOException {
+        File dir = moduleDir(name, slot);
+        Assert.assertTrue(dir.mkdirs());
+        try (PrintWriter writer = new PrintWriter(new File(dir, "module.xml"), "UTF-8")) {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<module-alias xmlns=\"urn:jboss:module:1.1\" name=\"" + name + "\" slot=\"" + slot + "\" target-name=\"" + target + "\"/>");
+        }
+    }
+
+    /**
+     * Writes a module.xml for the given module. Dependencies prefixed with '?' are optional.
+     */
+    private void addModule(String name, String slot, String...deps) throws IOException {
+        writeModule(moduleDir(name, slot), name, slot, deps);
+    }
+
+    /**
+     * Adds resource roots to the module.xml written by {@link #addModule(String, String, String...)}, along with a
+     * maven artifact which should be ignored.
+     */
+    private void addResourceRoots(String name, String slot, String...paths) throws IOException {
+        File moduleXml = new File(moduleDir(name, slot), "module.xml");
+        StringBuilder resources = new StringBuilder("<resources>");
+        for (String path : paths) {
+            resources.append("<resource-root path=\"" + path + "\"><filter><exclude path=\"META-INF\"/></filter></resource-root>");
+        }
+        resources.append("<artifact name=\"org.example:example:1.0\"/>");
+        String xml = new String(Files.readAllBytes(moduleXml.toPath()), "UTF-8");
+        Files.write(moduleXml.toPath(), xml.replace("<resources>", resources.toString()).getBytes("UTF-8"));
+    }
+
+    private void writeJar(File jar, String entry, byte[] contents) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(entry));
+            out.write(contents);
+            out.closeEntry();
+        }
+    }
+
+    /**
+     * Creates the start of a class file, up to the end of the constant pool, which is all
+     * {@link ClassReferenceReader} reads. References starting with '(' are added as method descriptors, and the
+     * rest as classes.
+     */
+    private byte[] classFile(String name, String...references) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        //A long to check it takes up two entries, then a utf8 and a class or name and type entry for each class
+        out.writeShort(3 + (references.length + 1) * 2);
+        out.writeByte(5);
+        out.writeLong(42);
+        List<String> entries = new ArrayList<>();
+        entries.add(name);
+        entries.addAll(Arrays.asList(references));
+        int i = 3;
+        for (String reference : entries) {
+            out.writeByte(1);
+            out.writeUTF(reference);
+            if (reference.startsWith("(")) {
+                out.writeByte(12);
+                out.writeShort(i);
+            } else {
+                out.writeByte(7);
+            }
+            out.writeShort(i);
+            i += 2;
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeModule(File dir, String name, String slot, String...deps) throws IOException {
+        Assert.assertTrue(dir.mkdirs());
+        try (PrintWriter writer = new PrintWriter(new File(dir, "module.xml"), "UTF-8")) {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<module xmlns=\"urn:jboss:module:1.1\" name=\"" + name + "\" slot=\"" + slot + "\">");
+            writer.println("    <properties>");
+            writer.println("        <property name=\"jboss.api\" value=\"private\"/>");
+            writer.println("    </properties>");
+            writer.println("    <resources>");
+            writer.println("    </resources>");
+            writer.println("    <dependencies>");
+            writer.println("        <system export=\"true\">");
+            writer.println("            <paths>");
+            writer.println("                <path name=\"org/xml/sax\"/>");
+            writer.println("            </paths>");
+            writer.println("        </system>");
+            for (String dep : deps) {
+                if (dep.startsWith("?")) {
+                    writer.println("        <module name=\"" + dep.substring(1) + "\" optional=\"true\"/>");
+                } else {
+                    writer.println("        <module name=\"" + dep + "\" export=\"true\">");
+                    writer.println("            <imports>");
+                    writer.println("                <include path=\"META-INF\"/>");
+                    writer.println("            </imports>");
+                    writer.println("        </module>");
+                }
+            }
+            writer.println("    </dependencies>");
+            writer.println("</module>");
+        }
+    }
+
+    private File moduleDir(String name, String slot) {
+        return new File(root, name.replace('.', File.separatorChar) + File.separator + slot);
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private Set<ModuleDependency> createDepSet(ModuleDependency...deps) {
+        Set<ModuleDependency> depSet = new HashSet<>();
+        for (ModuleDependency dep : deps) {
+            depSet.add(dep);
+        }
+        return depSet;
+    }
+
+    private Set<ModuleIdentifier> createIdSet(String...ids) {
+        Set<ModuleIdentifier> idSet = new HashSet<>();
+        for (String id : ids) {
+            idSet.add(id(id));
+        }
+        return idSet;
+    }
+
+    private Set<String> createStringSet(String...strings) {
+        return new HashSet<>(Arrays.asList(strings));
+    }
+
+    private ModuleIdentifier id(String s){
+        return ModuleIdentifier.create(s);
+    }
+
+    private ModuleDependency dep(String from, String to, boolean optional){
+        return new ModuleDependency(id(from), id(to), optional);
+    }
+}